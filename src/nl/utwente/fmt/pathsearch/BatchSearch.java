@@ -0,0 +1,82 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+
+/**
+ * Search for the solutions of many products at once. The searches for the
+ * individual products are scheduled concurrently on an executor, and all
+ * share the pruned graph of a single {@link MySearch}, which is computed
+ * once, up front. The graph should not be changed while a batch is running.
+ * @author Arend Rensink
+ */
+public class BatchSearch {
+    private final MySearch search;
+    private final Executor executor;
+
+    public BatchSearch(Graph graph) {
+        this(new MySearch(graph));
+    }
+
+    /** Constructs a batch search that runs on the common fork-join pool. */
+    public BatchSearch(MySearch search) {
+        this(search, ForkJoinPool.commonPool());
+    }
+
+    public BatchSearch(MySearch search, Executor executor) {
+        this.search = search;
+        this.executor = executor;
+    }
+
+    public MySearch getSearch() {
+        return this.search;
+    }
+
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /** Counts the solutions of each of a collection of products. */
+    public Map<Node, SolutionCount> countAll(Collection<Node> products) {
+        return forEachProduct(products, MySearch::count);
+    }
+
+    /** Collects the solutions of each of a collection of products. */
+    public Map<Node, SolutionBatch> collectAll(Collection<Node> products) {
+        return forEachProduct(products, MySearch::collect);
+    }
+
+    /**
+     * Applies a task to the underlying search and each of a collection of
+     * products, concurrently, and waits for all of them to complete.
+     * @return the results of the task, in the iteration order of the products
+     * @throws RuntimeException the (first) exception thrown by a task, if any
+     */
+    public <R> Map<Node, R> forEachProduct(Collection<Node> products, BiFunction<MySearch, Node, R> task) {
+        var futures = new ArrayList<CompletableFuture<R>>(products.size());
+        for (var product : products) {
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(this.search, product), this.executor));
+        }
+        var result = new LinkedHashMap<Node, R>();
+        var iter = futures.iterator();
+        try {
+            for (var product : products) {
+                result.put(product, iter.next().join());
+            }
+        } catch (CompletionException exc) {
+            futures.forEach(f -> f.cancel(false));
+            if (exc.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exc;
+        }
+        return result;
+    }
+}
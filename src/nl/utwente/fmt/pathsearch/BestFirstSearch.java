@@ -0,0 +1,225 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Search that returns the solutions of a product in order of increasing cost,
+ * so that the first solution is a cheapest one. The cost of a solution is the
+ * sum of its edge weights, which by default are all 1, so that the cost is
+ * the size. The search space is the same as that of {@link MySearch}, but it
+ * is explored best-first: the open states (sequences of maker choices) are
+ * ordered by a lower bound on the cost of their solutions, derived from the
+ * pre-nodes and weighted depths of the graph (see
+ * {@link MySearchInstance#getLowerBound(EdgeWeights)}). Since the bound is
+ * exact for complete solutions, every solution is returned only after all
+ * states that might lead to cheaper ones have been expanded. A search can be
+ * limited through {@link SearchOptions}, where every expanded state counts as
+ * a step.
+ * @author Arend Rensink
+ */
+public class BestFirstSearch implements Search {
+    private final MySearch search;
+    /** The edge weights, or {@code null} if all weights are 1. */
+    private final ToIntFunction<Edge> weight;
+
+    public BestFirstSearch(Graph graph) {
+        this(new MySearch(graph));
+    }
+
+    /** Constructs a search with unit edge weights. */
+    public BestFirstSearch(MySearch search) {
+        this.search = search;
+        this.weight = null;
+    }
+
+    /** Constructs a search with given (non-negative) edge weights. */
+    public BestFirstSearch(MySearch search, ToIntFunction<Edge> weight) {
+        this.search = search;
+        this.weight = weight;
+    }
+
+    public Graph getGraph() {
+        return this.search.getGraph();
+    }
+
+    /**
+     * Returns the cost of a solution, i.e., the sum of the weights of its edges.
+     * The cost saturates at {@link Integer#MAX_VALUE}.
+     */
+    public int getCost(Solution solution) {
+        if (this.weight == null) {
+            return solution.size();
+        }
+        return (int) Math.min(solution.stream().mapToLong(this.weight::applyAsInt).sum(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Iterator<Solution> search(String name) {
+        return search(new Node(name));
+    }
+
+    @Override
+    public Iterator<Solution> search(Node product) {
+        return new Instance(product, Long.MAX_VALUE, SearchOptions.NONE);
+    }
+
+    /** Returns an iterator over the {@code k} cheapest solutions of a product, in order of increasing cost. */
+    public Iterator<Solution> search(Node product, int k) {
+        return new Instance(product, k, SearchOptions.NONE);
+    }
+
+    /**
+     * Returns an iterator over the {@code k} cheapest solutions of a product, in
+     * order of increasing cost, within the limits of given options. Of the other
+     * options, only the ordering of the in-edges applies; it decides between
+     * states of the same cost.
+     */
+    public Instance search(Node product, int k, SearchOptions options) {
+        return new Instance(product, k, options);
+    }
+
+    @Override
+    public void forEachSolution(Node product, Consumer<? super SolutionView> action) {
+        search(product).forEachRemaining(action);
+    }
+
+    /** Counts the solutions depth-first, as their order does not matter. */
+    @Override
+    public SolutionCount count(Node product) {
+        return this.search.count(product);
+    }
+
+    /** Open state of the search. */
+    private record State(int[] prefix, int bound, long seqNr) implements Comparable<State> {
+        /** Orders by bound, then prefers longer prefixes, then older states. */
+        @Override
+        public int compareTo(State other) {
+            var result = Integer.compare(this.bound, other.bound);
+            if (result == 0) {
+                result = Integer.compare(other.prefix.length, this.prefix.length);
+            }
+            if (result == 0) {
+                result = Long.compare(this.seqNr, other.seqNr);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Iterator over the solutions of a product, in order of increasing cost.
+     * When a limit is reached, the iterator ends, and its status tells which
+     * limit it was.
+     */
+    public class Instance implements Iterator<Solution> {
+        private final CompactGraph cg;
+        private final EdgeWeights weights;
+        private final MySearchInstance instance;
+        private final PriorityQueue<State> open = new PriorityQueue<>();
+        private long seqNr;
+        /** Number of solutions still to be returned. */
+        private long remaining;
+        /** Next solution to be returned, if already found. */
+        private Solution next;
+        private final long maxSteps;
+        /** Moment at which the search should stop, on the scale of {@link System#nanoTime()}. */
+        private final long stopNanos;
+        /** Cancellation token of the search, if any. */
+        private final CancellationToken token;
+        /** Number of states expanded so far. */
+        private long stepCount;
+        /** Status of the search if it was stopped by a limit; {@code null} otherwise. */
+        private SearchStatus status;
+
+        Instance(Node product, long limit, SearchOptions options) {
+            this.cg = BestFirstSearch.this.search.getCompactGraph(product, options.getOrdering());
+            this.maxSteps = options.getMaxSteps();
+            this.stopNanos = options.getStopNanos();
+            this.token = options.getCancellation();
+            this.weights = BestFirstSearch.this.weight == null ? new EdgeWeights(this.cg)
+                    : new EdgeWeights(this.cg, BestFirstSearch.this.weight);
+            this.instance = new MySearchInstance(this.cg, product);
+            this.remaining = limit;
+            if (!this.instance.isExhausted()) {
+                this.open.add(new State(new int[0], this.instance.getLowerBound(this.weights),
+                        this.seqNr++));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.next == null && this.remaining > 0 && !this.open.isEmpty() && checkLimits()) {
+                var state = this.open.poll();
+                this.stepCount++;
+                this.instance.replay(state.prefix);
+                var head = this.instance.getHead();
+                if (head < 0) {
+                    this.next = this.instance.computeSolution();
+                    this.remaining--;
+                } else {
+                    expand(state, head);
+                }
+            }
+            return this.next != null;
+        }
+
+        /**
+         * Checks the limits of the search, and stops it if one of them is reached.
+         * @return {@code true} if the search can continue
+         */
+        private boolean checkLimits() {
+            if (this.status == null) {
+                if (this.stepCount >= this.maxSteps) {
+                    this.status = SearchStatus.STEP_LIMIT_REACHED;
+                } else if (this.token != null && this.token.isCancelled()) {
+                    this.status = SearchStatus.CANCELLED;
+                } else if (this.stopNanos != Long.MAX_VALUE && System.nanoTime() >= this.stopNanos) {
+                    this.status = SearchStatus.DEADLINE_EXCEEDED;
+                }
+            }
+            return this.status == null;
+        }
+
+        /** Returns the status of this search. */
+        public SearchStatus getStatus() {
+            if (this.status != null) {
+                return this.status;
+            }
+            return this.next == null && this.open.isEmpty() ? SearchStatus.COMPLETE : SearchStatus.RUNNING;
+        }
+
+        /** Returns the number of states expanded so far. */
+        public long getStepCount() {
+            return this.stepCount;
+        }
+
+        /** Adds the children of the current state, which has a given head, to the open states. */
+        private void expand(State state, int head) {
+            var inEdgeCount = this.cg.getInEdgeCount(head);
+            for (var makerIx = 0; makerIx < inEdgeCount; makerIx++) {
+                if (this.instance.isFeasible(makerIx)) {
+                    this.instance.make(makerIx);
+                    var prefix = Arrays.copyOf(state.prefix, state.prefix.length + 1);
+                    prefix[state.prefix.length] = makerIx;
+                    var bound = Math.max(state.bound, this.instance.getLowerBound(this.weights));
+                    this.open.add(new State(prefix, bound, this.seqNr++));
+                    this.instance.unmake();
+                }
+            }
+        }
+
+        @Override
+        public Solution next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var result = this.next;
+            this.next = null;
+            return result;
+        }
+    }
+}
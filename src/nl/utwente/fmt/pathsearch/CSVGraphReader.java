@@ -1,19 +1,33 @@
 package nl.utwente.fmt.pathsearch;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
-import com.opencsv.CSVParserBuilder;
-import com.opencsv.CSVReaderHeaderAwareBuilder;
 import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvMalformedLineException;
 
+/**
+ * Reader for graphs in a {@code ';'}-separated format, with a header line
+ * followed by one line per edge, consisting of the target node, the edge name
+ * and the source nodes. The sources end at the first empty field. Fields are
+ * not quoted.
+ * <p>
+ * The file is memory-mapped and parsed in chunks of lines, which may be
+ * processed in parallel; node names are decoded once per chunk.
+ */
 public class CSVGraphReader {
     /**
      * Flag controlling whether generators are added to nodes without incoming
@@ -24,16 +38,40 @@ public class CSVGraphReader {
     private static boolean OPTIMISE = false;
     /** Flag controlling whether log messages are emitted. */
     private static boolean LOG = true;
+    /** Default approximate size of the chunks in which the file is parsed. */
+    static final long CHUNK_SIZE = 1 << 24;
 
     private final String filename;
     private final Map<String, Node> nodeMap;
     private Graph graph;
+    /** Flag controlling whether the chunks of the file are parsed in parallel. */
+    private boolean parallel;
+    /** Approximate size of the chunks in which the file is parsed. */
+    private long chunkSize = CHUNK_SIZE;
 
     public CSVGraphReader(String filename) {
         this.filename = filename;
         this.nodeMap = new HashMap<>();
     }
 
+    /** Sets whether the chunks of the file are parsed in parallel. */
+    public CSVGraphReader setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * Sets the approximate size of the chunks in which the file is parsed;
+     * chunks are extended to the end of their last line.
+     */
+    CSVGraphReader setChunkSize(long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(String.format("Chunk size %s is not positive", chunkSize));
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
     public Graph run() throws IOException, CsvException {
         if (this.graph == null) {
             var graphName = new File(this.filename).getName();
@@ -44,23 +82,254 @@ public class CSVGraphReader {
     }
 
     private void buildGraph() throws IOException, CsvException {
-        // Build reader instance
-        var parser = new CSVParserBuilder().withSeparator(';').build();
-        var reader = new CSVReaderHeaderAwareBuilder(new FileReader(this.filename)).withCSVParser(parser).build();
-        // Read all rows at once
-        reader.readAll().stream().forEach(r -> addRow(r));
+        try (var channel = FileChannel.open(Path.of(this.filename), StandardOpenOption.READ)) {
+            var chunks = split(channel);
+            var stream = this.parallel ? chunks.parallelStream() : chunks.stream();
+            try {
+                stream.forEach(c -> c.parse(channel));
+            } catch (UncheckedIOException exc) {
+                throw exc.getCause();
+            }
+            var lineCount = 0L;
+            for (var chunk : chunks) {
+                if (chunk.error != null) {
+                    throw new CsvMalformedLineException(chunk.error, lineCount + chunk.errorLine, this.filename);
+                }
+                addRows(chunk);
+                lineCount += chunk.lineCount;
+            }
+        }
         if (COMPLETE) {
             completeGraph();
         }
     }
 
-    private void addRow(String[] row) {
-        var target = addNode(row[0]);
-        List<Node> source = new ArrayList<>();
-        for (var i = 2; i < row.length && row[i].length() > 0; i++) {
-            source.add(addNode(row[i]));
+    /** Divides the file into chunks that start at the beginning of a line. */
+    private List<Chunk> split(FileChannel channel) throws IOException {
+        var result = new ArrayList<Chunk>();
+        var size = channel.size();
+        var lookahead = ByteBuffer.allocate(4096);
+        var start = 0L;
+        while (start < size) {
+            var end = Math.min(start + this.chunkSize, size);
+            // extend the chunk to the end of its last line
+            var found = false;
+            while (!found && end < size) {
+                lookahead.clear();
+                var read = channel.read(lookahead, end);
+                for (var i = 0; !found && i < read; i++) {
+                    found = lookahead.get(i) == '\n';
+                    end++;
+                }
+            }
+            result.add(new Chunk(start, end, start == 0));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Adds the rows of a parsed chunk to the graph, in the order of the file. */
+    private void addRows(Chunk chunk) {
+        var nodes = new Node[chunk.names.size()];
+        for (var i = 0; i < nodes.length; i++) {
+            nodes[i] = addNode(chunk.names.get(i));
+        }
+        var rows = chunk.rows;
+        var pos = 0;
+        for (var edgeName : chunk.edgeNames) {
+            var target = nodes[rows[pos]];
+            var sourceCount = rows[pos + 1];
+            List<Node> source = new ArrayList<>(sourceCount);
+            for (var i = 0; i < sourceCount; i++) {
+                source.add(nodes[rows[pos + 2 + i]]);
+            }
+            pos += 2 + sourceCount;
+            addEdge(source, edgeName, target);
+        }
+    }
+
+    /**
+     * Part of the file consisting of complete lines, together with the result of
+     * parsing it. Node names are interned per chunk: each distinct name is
+     * decoded once, and rows refer to names by their index.
+     */
+    private static class Chunk {
+        private final long start;
+        private final long end;
+        /** Flag indicating that the chunk starts with the header line. */
+        private final boolean header;
+        /** The distinct node names of the chunk, in order of first occurrence. */
+        private final List<String> names = new ArrayList<>();
+        /** Offsets in the chunk of the first occurrences of the names. */
+        private int[] nameOffsets = new int[256];
+        /** Lengths of the names. */
+        private int[] nameLengths = new int[256];
+        /** Hash table from name hashes to name indices plus one. */
+        private int[] table = new int[1024];
+        /** Edge names, one per row. */
+        private final List<String> edgeNames = new ArrayList<>();
+        /** Rows, each encoded as target index, source count and source indices. */
+        private int[] rows = new int[1024];
+        private int rowsSize;
+        /** Number of lines in the chunk. */
+        private int lineCount;
+        /** Error message for a malformed line, if any. */
+        private String error;
+        /** Chunk-local number of the malformed line. */
+        private int errorLine;
+        private ByteBuffer buffer;
+
+        Chunk(long start, long end, boolean header) {
+            this.start = start;
+            this.end = end;
+            this.header = header;
+        }
+
+        void parse(FileChannel channel) {
+            try {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, this.start, this.end - this.start);
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+            var buffer = this.buffer;
+            var limit = buffer.limit();
+            var pos = 0;
+            if (this.header) {
+                pos = skipLine(pos, limit);
+            }
+            while (pos < limit && this.error == null) {
+                var lineEnd = pos;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                parseLine(pos, lineEnd > pos && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd);
+                pos = lineEnd + 1;
+            }
+            // only keep the parse results
+            this.buffer = null;
+            this.table = null;
+            this.nameOffsets = null;
+            this.nameLengths = null;
+        }
+
+        private int skipLine(int pos, int limit) {
+            while (pos < limit && this.buffer.get(pos) != '\n') {
+                pos++;
+            }
+            this.lineCount++;
+            return pos + 1;
+        }
+
+        private void parseLine(int pos, int lineEnd) {
+            this.lineCount++;
+            if (pos == lineEnd) {
+                // skip empty lines
+                return;
+            }
+            var fieldEnd = fieldEnd(pos, lineEnd);
+            if (fieldEnd == pos || fieldEnd == lineEnd) {
+                this.error = fieldEnd == pos ? "Empty target node" : "Missing edge name";
+                this.errorLine = this.lineCount;
+                return;
+            }
+            var rowStart = this.rowsSize;
+            ensureRows(2);
+            this.rows[rowStart] = intern(pos, fieldEnd);
+            this.rowsSize += 2;
+            pos = fieldEnd + 1;
+            fieldEnd = fieldEnd(pos, lineEnd);
+            this.edgeNames.add(decode(pos, fieldEnd));
+            pos = fieldEnd + 1;
+            var sourceCount = 0;
+            while (pos < lineEnd && (fieldEnd = fieldEnd(pos, lineEnd)) > pos) {
+                ensureRows(1);
+                this.rows[this.rowsSize] = intern(pos, fieldEnd);
+                this.rowsSize++;
+                sourceCount++;
+                pos = fieldEnd + 1;
+            }
+            this.rows[rowStart + 1] = sourceCount;
+        }
+
+        /** Returns the position of the separator or line end after a given position. */
+        private int fieldEnd(int pos, int lineEnd) {
+            while (pos < lineEnd && this.buffer.get(pos) != ';') {
+                pos++;
+            }
+            return pos;
+        }
+
+        private void ensureRows(int extra) {
+            if (this.rowsSize + extra > this.rows.length) {
+                this.rows = Arrays.copyOf(this.rows, 2 * (this.rowsSize + extra));
+            }
+        }
+
+        /** Returns the index of the name between two positions, adding it if it is new. */
+        private int intern(int from, int to) {
+            var hash = 0;
+            for (var i = from; i < to; i++) {
+                hash = 31 * hash + this.buffer.get(i);
+            }
+            var mask = this.table.length - 1;
+            var slot = hash & mask;
+            while (this.table[slot] != 0) {
+                var ix = this.table[slot] - 1;
+                if (equals(ix, from, to)) {
+                    return ix;
+                }
+                slot = (slot + 1) & mask;
+            }
+            var result = this.names.size();
+            if (result == this.nameOffsets.length) {
+                this.nameOffsets = Arrays.copyOf(this.nameOffsets, 2 * result);
+                this.nameLengths = Arrays.copyOf(this.nameLengths, 2 * result);
+            }
+            this.nameOffsets[result] = from;
+            this.nameLengths[result] = to - from;
+            this.names.add(decode(from, to));
+            this.table[slot] = result + 1;
+            if (2 * this.names.size() > this.table.length) {
+                rehash();
+            }
+            return result;
+        }
+
+        private boolean equals(int ix, int from, int to) {
+            if (this.nameLengths[ix] != to - from) {
+                return false;
+            }
+            var offset = this.nameOffsets[ix];
+            for (var i = from; i < to; i++, offset++) {
+                if (this.buffer.get(i) != this.buffer.get(offset)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            this.table = new int[2 * this.table.length];
+            var mask = this.table.length - 1;
+            for (var ix = 0; ix < this.names.size(); ix++) {
+                var hash = 0;
+                var offset = this.nameOffsets[ix];
+                for (var i = offset; i < offset + this.nameLengths[ix]; i++) {
+                    hash = 31 * hash + this.buffer.get(i);
+                }
+                var slot = hash & mask;
+                while (this.table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.table[slot] = ix + 1;
+            }
+        }
+
+        private String decode(int from, int to) {
+            var bytes = new byte[to - from];
+            this.buffer.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
         }
-        addEdge(source, row[1], target);
     }
 
     private Node addNode(String name) {
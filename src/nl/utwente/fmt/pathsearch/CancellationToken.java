@@ -0,0 +1,21 @@
+package nl.utwente.fmt.pathsearch;
+
+/**
+ * Token through which a running search can be cancelled from another thread.
+ * The search checks the token periodically, and stops with status
+ * {@link SearchStatus#CANCELLED} once it is cancelled. A token can be shared
+ * by any number of searches.
+ * @author Arend Rensink
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    /** Cancels all searches using this token. */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+}
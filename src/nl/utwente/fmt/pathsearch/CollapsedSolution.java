@@ -0,0 +1,135 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Solution of a search over a collapsed graph (see
+ * {@link CompactGraph#getCollapsed()}), as an immutable list of edge classes.
+ * Choosing one edge from every class gives a solution; the solutions are
+ * only constructed when the collapsed solution is expanded.
+ * @author Arend Rensink
+ */
+public class CollapsedSolution extends AbstractList<List<Edge>> {
+    private final CompactGraph cg;
+    private final Node product;
+    /** Numbers of the representative edges of the classes in {@link #cg}. */
+    private final int[] edges;
+    private final long stepCount;
+
+    /** Constructs a collapsed solution from a solution over a collapsed graph. */
+    CollapsedSolution(Solution solution) {
+        this.cg = solution.getCompactGraph();
+        this.product = solution.getProduct();
+        this.edges = new int[solution.size()];
+        for (var i = 0; i < this.edges.length; i++) {
+            this.edges[i] = solution.getEdgeIx(i);
+        }
+        this.stepCount = solution.getStepCount();
+    }
+
+    /** Returns the edges of the {@code i}th class. */
+    @Override
+    public List<Edge> get(int i) {
+        var e = this.edges[i];
+        var full = this.cg.getFull();
+        return new AbstractList<>() {
+            @Override
+            public Edge get(int j) {
+                return full.getEdge(CollapsedSolution.this.cg.getClassMember(e, j));
+            }
+
+            @Override
+            public int size() {
+                return getClassSize(i);
+            }
+        };
+    }
+
+    /** Returns the number of classes, which is the size of every solution in this one. */
+    @Override
+    public int size() {
+        return this.edges.length;
+    }
+
+    public Node getProduct() {
+        return this.product;
+    }
+
+    /** Returns the number of search steps taken to find this collapsed solution. */
+    public long getStepCount() {
+        return this.stepCount;
+    }
+
+    /**
+     * Returns the number of solutions represented by this one, being the
+     * product of the class sizes, or {@link Long#MAX_VALUE} if that is larger.
+     */
+    public long getSolutionCount() {
+        var result = 1L;
+        for (var i = 0; i < this.edges.length; i++) {
+            var size = getClassSize(i);
+            result = result > Long.MAX_VALUE / size ? Long.MAX_VALUE : result * size;
+        }
+        return result;
+    }
+
+    /** Returns the number of edges in the {@code i}th class. */
+    public int getClassSize(int i) {
+        return this.cg.getClassSize(this.edges[i]);
+    }
+
+    /** Returns the solution consisting of the first edge of every class. */
+    public Solution getRepresentative() {
+        return toSolution(new int[this.edges.length]);
+    }
+
+    /**
+     * Returns an iterator over the solutions represented by this one. The
+     * solutions are constructed on demand; the last class varies fastest.
+     */
+    public Iterator<Solution> expand() {
+        return new Iterator<>() {
+            /** Index in its class of the chosen edge of every class, or {@code null} if done. */
+            private int[] choice = new int[CollapsedSolution.this.edges.length];
+
+            @Override
+            public boolean hasNext() {
+                return this.choice != null;
+            }
+
+            @Override
+            public Solution next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var result = toSolution(this.choice);
+                // advance the choices, as an odometer
+                var i = this.choice.length - 1;
+                while (i >= 0 && this.choice[i] + 1 == getClassSize(i)) {
+                    this.choice[i] = 0;
+                    i--;
+                }
+                if (i < 0) {
+                    this.choice = null;
+                } else {
+                    this.choice[i]++;
+                }
+                return result;
+            }
+        };
+    }
+
+    /** Returns the solution in which a given edge is chosen from every class. */
+    private Solution toSolution(int[] choice) {
+        var edges = new int[this.edges.length];
+        for (var i = 0; i < edges.length; i++) {
+            edges[i] = this.cg.getClassMember(this.edges[i], choice[i]);
+        }
+        var result = new Solution(this.cg.getFull(), this.product, edges);
+        result.setStepCount(this.stepCount);
+        return result;
+    }
+}
@@ -0,0 +1,464 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frozen, integer-indexed representation of a (pruned) graph, for use in the
+ * search. Nodes and edges are numbered densely; edges are numbered by target
+ * (in node order) and then in the in-edge order of the facade, so that the
+ * {@code i}th incoming edge of a node {@code n} has number
+ * {@code getInEdge(n, i)}. The in-edge order can be chosen by an
+ * {@link EdgeOrdering}. All adjacency information is stored in
+ * compressed-sparse-row form: a start array indexed by node or edge number,
+ * pointing into a flat array of node or edge numbers.
+ * <p>
+ * A compact graph can be collapsed (see {@link #getCollapsed()}): every class
+ * of equivalent in-edges of a node (see {@link GraphFacade#getInEdgeClasses(Node)})
+ * is then represented by its first edge, and the other edges of the class are
+ * only available as members of that class. A search over the collapsed graph
+ * branches over classes rather than edges.
+ * @author Arend Rensink
+ */
+public class CompactGraph {
+    private final GraphFacade gf;
+    /** The nodes, indexed by their number. */
+    private final Node[] nodes;
+    /** Mapping from nodes to their number. */
+    private final Map<Node, Integer> nodeIxMap;
+    /** The edges, indexed by their number. */
+    private final Edge[] edges;
+    /** Mapping from edge numbers to the numbers of their target nodes. */
+    private final int[] target;
+    /** Start of the incoming edges of each node; the edges themselves are consecutive. */
+    private final int[] inStart;
+    /** Start of the outgoing edges of each node in {@link #out}. */
+    private final int[] outStart;
+    /** Outgoing edges of all nodes. */
+    private final int[] out;
+    /** Start of the source nodes of each edge in {@link #source}. */
+    private final int[] sourceStart;
+    /** Source nodes of all edges, without duplicates. */
+    private final int[] source;
+    /** Start of the pre-nodes of each edge in {@link #pre}. */
+    private final int[] preStart;
+    /** Pre-nodes of all edges. */
+    private final int[] pre;
+    /**
+     * Start of the pre-nodes of each edge in {@link #preWord} and {@link #preMask},
+     * which together form a sparse bitset over the node numbers.
+     */
+    private final int[] preWordStart;
+    /** Indices of the non-zero words of the pre-node bitsets of all edges, in increasing order per edge. */
+    private final int[] preWord;
+    /** Non-zero words of the pre-node bitsets of all edges. */
+    private final long[] preMask;
+    /** Start of the pre-nodes of each node in {@link #nodePre}. */
+    private final int[] nodePreStart;
+    /** Pre-nodes of all nodes. */
+    private final int[] nodePre;
+    /** Depth of each node. */
+    private final int[] depth;
+    /** The ordering of the in-edges. */
+    private final EdgeOrdering ordering;
+    /** The graph of which this is the collapsed form, or {@code null} if this graph is not collapsed. */
+    private final CompactGraph full;
+    /** Start of the class members of each edge in {@link #member}, if this graph is collapsed. */
+    private final int[] memberStart;
+    /** Numbers in {@link #full} of the class members of all edges, if this graph is collapsed. */
+    private final int[] member;
+    /** The collapsed form of this graph, or {@code null} if it has not yet been computed. */
+    private CompactGraph collapsed;
+
+    public CompactGraph(GraphFacade gf) {
+        this(gf, EdgeOrdering.DEFAULT);
+    }
+
+    /** Constructs a compact graph of a facade, with the in-edges in the order of a given ordering. */
+    public CompactGraph(GraphFacade gf, EdgeOrdering ordering) {
+        this(gf, ordering, null);
+    }
+
+    /**
+     * Constructs a compact graph of a facade, which is the collapsed form of a
+     * given compact graph of the same facade, unless that is {@code null}.
+     */
+    private CompactGraph(GraphFacade gf, EdgeOrdering ordering, CompactGraph full) {
+        this.gf = gf;
+        this.ordering = ordering;
+        this.full = full;
+        var nodeCount = gf.getNodes().size();
+        this.nodes = gf.getNodes().toArray(new Node[nodeCount]);
+        this.nodeIxMap = new HashMap<>();
+        for (var n = 0; n < nodeCount; n++) {
+            this.nodeIxMap.put(this.nodes[n], n);
+        }
+        // only edges in the in-edge lists take part in the search
+        var comparator = ordering == EdgeOrdering.DEFAULT ? null : ordering.getComparator(gf);
+        var inEdges = new ArrayList<List<List<Edge>>>(nodeCount);
+        // positions of the class members in the in-edges of the full graph, if this graph is collapsed
+        var classPositions = full == null ? null : new ArrayList<List<List<Integer>>>(nodeCount);
+        var edgeCount = 0;
+        var memberCount = 0;
+        this.inStart = new int[nodeCount + 1];
+        for (var n = 0; n < nodeCount; n++) {
+            List<List<Edge>> classes;
+            if (full != null) {
+                var fullIn = full.getInEdges(n);
+                var positions = GraphFacade.toClassPositions(fullIn);
+                classPositions.add(positions);
+                classes = positions.stream().map(c -> c.stream().map(fullIn::get).toList()).toList();
+            } else if (comparator == null) {
+                classes = gf.getInEdges(this.nodes[n]).stream().map(List::of).toList();
+            } else {
+                classes = gf.getInEdges(this.nodes[n]).stream().sorted(comparator).map(List::of).toList();
+            }
+            inEdges.add(classes);
+            this.inStart[n] = edgeCount;
+            edgeCount += classes.size();
+            for (var c : classes) {
+                memberCount += c.size();
+            }
+        }
+        this.inStart[nodeCount] = edgeCount;
+        this.edges = new Edge[edgeCount];
+        this.target = new int[edgeCount];
+        this.memberStart = full == null ? null : new int[edgeCount + 1];
+        this.member = full == null ? null : new int[memberCount];
+        var e = 0;
+        memberCount = 0;
+        for (var n = 0; n < nodeCount; n++) {
+            var classes = inEdges.get(n);
+            for (var k = 0; k < classes.size(); k++) {
+                this.edges[e] = classes.get(k).get(0);
+                this.target[e] = n;
+                if (full != null) {
+                    this.memberStart[e] = memberCount;
+                    for (var i : classPositions.get(n).get(k)) {
+                        this.member[memberCount] = full.getInEdge(n, i);
+                        memberCount++;
+                    }
+                }
+                e++;
+            }
+        }
+        if (full != null) {
+            this.memberStart[edgeCount] = memberCount;
+        }
+        this.outStart = new int[nodeCount + 1];
+        this.sourceStart = new int[edgeCount + 1];
+        this.preStart = new int[edgeCount + 1];
+        var sourceCount = 0;
+        var preCount = 0;
+        for (e = 0; e < edgeCount; e++) {
+            var sources = new LinkedHashSet<>(this.edges[e].source());
+            for (var s : sources) {
+                this.outStart[getNodeIx(s)]++;
+            }
+            sourceCount += sources.size();
+            preCount += gf.getPre(this.edges[e]).size();
+        }
+        // turn the out-degrees into end positions, then fill backwards
+        for (var n = 0; n < nodeCount; n++) {
+            this.outStart[n + 1] += this.outStart[n];
+        }
+        this.out = new int[sourceCount];
+        this.source = new int[sourceCount];
+        this.pre = new int[preCount];
+        sourceCount = 0;
+        preCount = 0;
+        for (e = 0; e < edgeCount; e++) {
+            this.sourceStart[e] = sourceCount;
+            for (var s : new LinkedHashSet<>(this.edges[e].source())) {
+                this.source[sourceCount] = getNodeIx(s);
+                sourceCount++;
+            }
+            this.preStart[e] = preCount;
+            for (var p : gf.getPre(this.edges[e])) {
+                this.pre[preCount] = getNodeIx(p);
+                preCount++;
+            }
+        }
+        this.sourceStart[edgeCount] = sourceCount;
+        this.preStart[edgeCount] = preCount;
+        // collect the pre-nodes of every edge into the words of a bitset;
+        // since the pre-nodes are sorted, the nodes of a word are consecutive
+        var sortedPre = this.pre.clone();
+        var wordCount = 0;
+        for (e = 0; e < edgeCount; e++) {
+            Arrays.sort(sortedPre, this.preStart[e], this.preStart[e + 1]);
+            var last = -1;
+            for (var i = this.preStart[e]; i < this.preStart[e + 1]; i++) {
+                if (sortedPre[i] >>> 6 != last) {
+                    last = sortedPre[i] >>> 6;
+                    wordCount++;
+                }
+            }
+        }
+        this.preWordStart = new int[edgeCount + 1];
+        this.preWord = new int[wordCount];
+        this.preMask = new long[wordCount];
+        wordCount = 0;
+        for (e = 0; e < edgeCount; e++) {
+            this.preWordStart[e] = wordCount;
+            for (var i = this.preStart[e]; i < this.preStart[e + 1]; i++) {
+                var w = sortedPre[i] >>> 6;
+                if (wordCount == this.preWordStart[e] || this.preWord[wordCount - 1] != w) {
+                    this.preWord[wordCount] = w;
+                    wordCount++;
+                }
+                this.preMask[wordCount - 1] |= 1L << sortedPre[i];
+            }
+        }
+        this.preWordStart[edgeCount] = wordCount;
+        for (e = edgeCount - 1; e >= 0; e--) {
+            for (var i = this.sourceStart[e]; i < this.sourceStart[e + 1]; i++) {
+                var s = this.source[i];
+                this.outStart[s]--;
+                this.out[this.outStart[s]] = e;
+            }
+        }
+        this.nodePreStart = new int[nodeCount + 1];
+        this.depth = new int[nodeCount];
+        preCount = 0;
+        for (var n = 0; n < nodeCount; n++) {
+            preCount += gf.getPre(this.nodes[n]).size();
+            this.depth[n] = gf.getDepth(this.nodes[n]);
+        }
+        this.nodePre = new int[preCount];
+        preCount = 0;
+        for (var n = 0; n < nodeCount; n++) {
+            this.nodePreStart[n] = preCount;
+            for (var p : gf.getPre(this.nodes[n])) {
+                this.nodePre[preCount] = getNodeIx(p);
+                preCount++;
+            }
+        }
+        this.nodePreStart[nodeCount] = preCount;
+    }
+
+    /**
+     * Returns the collapsed form of this graph, in which every class of
+     * equivalent in-edges is represented by its first edge. Nodes have the same
+     * numbers in both graphs. If this graph is already collapsed, it is returned
+     * itself.
+     */
+    public CompactGraph getCollapsed() {
+        var result = this.collapsed;
+        if (result == null) {
+            result = this.full == null ? new CompactGraph(this.gf, this.ordering, this) : this;
+            this.collapsed = result;
+        }
+        return result;
+    }
+
+    /** Returns the ordering of the in-edges of this graph. */
+    public EdgeOrdering getOrdering() {
+        return this.ordering;
+    }
+
+    /** Indicates whether this is the collapsed form of another compact graph. */
+    public boolean isCollapsed() {
+        return this.full != null;
+    }
+
+    /**
+     * Returns the graph of which this is the collapsed form, or this graph
+     * itself if it is not collapsed. The class members of the edges are numbered
+     * in the returned graph.
+     */
+    public CompactGraph getFull() {
+        return this.full == null ? this : this.full;
+    }
+
+    /** Returns the number of edges in the class of a given edge; always 1 if this graph is not collapsed. */
+    public int getClassSize(int e) {
+        return this.full == null ? 1 : this.memberStart[e + 1] - this.memberStart[e];
+    }
+
+    /**
+     * Returns the number in {@link #getFull()} of the {@code i}th edge in the
+     * class of a given edge; the first of these is the edge itself.
+     */
+    public int getClassMember(int e, int i) {
+        return this.full == null ? e : this.member[this.memberStart[e] + i];
+    }
+
+    public GraphFacade getFacade() {
+        return this.gf;
+    }
+
+    public Graph getGraph() {
+        return this.gf.getGraph();
+    }
+
+    public String getName() {
+        return this.gf.getName();
+    }
+
+    public int getNodeCount() {
+        return this.nodes.length;
+    }
+
+    public int getEdgeCount() {
+        return this.edges.length;
+    }
+
+    public Node getNode(int n) {
+        return this.nodes[n];
+    }
+
+    /** Returns the number of a given node, or {@code -1} if it is not in the graph. */
+    public int getNodeIx(Node node) {
+        var result = this.nodeIxMap.get(node);
+        return result == null ? -1 : result;
+    }
+
+    public Edge getEdge(int e) {
+        return this.edges[e];
+    }
+
+    public int getTarget(int e) {
+        return this.target[e];
+    }
+
+    /** Returns the number of incoming edges of a given node. */
+    public int getInEdgeCount(int n) {
+        return this.inStart[n + 1] - this.inStart[n];
+    }
+
+    /** Returns the {@code i}th incoming edge of a given node. */
+    public int getInEdge(int n, int i) {
+        return this.inStart[n] + i;
+    }
+
+    /** Returns the incoming edges of a given node, in order. */
+    private List<Edge> getInEdges(int n) {
+        return Arrays.asList(this.edges).subList(this.inStart[n], this.inStart[n + 1]);
+    }
+
+    public int getOutStart(int n) {
+        return this.outStart[n];
+    }
+
+    public int getOutEnd(int n) {
+        return this.outStart[n + 1];
+    }
+
+    public int getOut(int i) {
+        return this.out[i];
+    }
+
+    public int getSourceStart(int e) {
+        return this.sourceStart[e];
+    }
+
+    public int getSourceEnd(int e) {
+        return this.sourceStart[e + 1];
+    }
+
+    public int getSource(int i) {
+        return this.source[i];
+    }
+
+    public int getPreStart(int e) {
+        return this.preStart[e];
+    }
+
+    public int getPreEnd(int e) {
+        return this.preStart[e + 1];
+    }
+
+    public int getPre(int i) {
+        return this.pre[i];
+    }
+
+    /**
+     * Returns the start of the pre-node bitset of a given edge, in terms of its
+     * non-zero words. The bitset is sparse: only the words with a pre-node in
+     * them are stored, so its size is bounded by the number of pre-nodes rather
+     * than by the number of nodes.
+     */
+    public int getPreWordStart(int e) {
+        return this.preWordStart[e];
+    }
+
+    public int getPreWordEnd(int e) {
+        return this.preWordStart[e + 1];
+    }
+
+    /** Returns the index in a bitset over the node numbers of the {@code i}th non-zero pre-node word. */
+    public int getPreWord(int i) {
+        return this.preWord[i];
+    }
+
+    /** Returns the {@code i}th non-zero pre-node word. */
+    public long getPreMask(int i) {
+        return this.preMask[i];
+    }
+
+    public int getNodePreStart(int n) {
+        return this.nodePreStart[n];
+    }
+
+    public int getNodePreEnd(int n) {
+        return this.nodePreStart[n + 1];
+    }
+
+    public int getNodePre(int i) {
+        return this.nodePre[i];
+    }
+
+    /** Returns the depth of a given node, i.e., the minimal height of its derivations. */
+    public int getDepth(int n) {
+        return this.depth[n];
+    }
+
+    /**
+     * Returns a fingerprint of this graph, covering the names and numbers of its
+     * nodes and edges, and the sources of the edges. Search states refer to nodes
+     * and edges by number, and can therefore only be restored in a graph with
+     * the same fingerprint. The fingerprint of a collapsed graph also covers the
+     * sizes of its edge classes.
+     */
+    public long getFingerprint() {
+        var result = this.fingerprint;
+        if (result == 0) {
+            result = FNV_OFFSET;
+            result = hash(result, this.nodes.length);
+            for (var node : this.nodes) {
+                result = hash(result, node.name().hashCode());
+            }
+            result = hash(result, this.edges.length);
+            for (var e = 0; e < this.edges.length; e++) {
+                result = hash(result, this.edges[e].name().hashCode());
+                result = hash(result, this.target[e]);
+                for (var i = this.sourceStart[e]; i < this.sourceStart[e + 1]; i++) {
+                    result = hash(result, this.source[i]);
+                }
+                if (this.full != null) {
+                    result = hash(result, getClassSize(e));
+                }
+            }
+            this.fingerprint = result;
+        }
+        return result;
+    }
+
+    /** Adds a value to a 64-bit FNV-1a hash. */
+    private static long hash(long hash, int value) {
+        for (var b = 0; b < 4; b++) {
+            hash = (hash ^ ((value >>> (8 * b)) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** The fingerprint of this graph, or 0 if it has not yet been computed. */
+    private long fingerprint;
+}
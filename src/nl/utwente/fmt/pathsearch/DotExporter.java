@@ -0,0 +1,290 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Exporter of solutions in DOT format. Graphs are rendered straight into a
+ * buffer, which is written to a channel when full; any number of graphs can
+ * be written to the same channel, so that a batch of solutions ends up in a
+ * single file. When used as a consumer, for instance in
+ * {@link Search#forEachSolution(Node, Consumer)}, the exporter only renders
+ * the solutions selected by its {@link Sampling}; the others cost no more
+ * than a call of {@link Sampling#test(long)}. The exporter must be closed to
+ * write the last buffer. Exporters are thread-safe: concurrent calls, such as
+ * those of a {@link ParallelSearch}, are serialised, and every graph is
+ * written as a whole.
+ * @author Arend Rensink
+ */
+public class DotExporter implements Consumer<SolutionView>, Closeable {
+    /**
+     * Policy selecting which solutions an exporter renders, by their index in
+     * the sequence of solutions passed to {@link DotExporter#accept(SolutionView)}.
+     */
+    @FunctionalInterface
+    public interface Sampling {
+        /** Indicates whether the solution with a given index is rendered. */
+        boolean test(long index);
+
+        /** Policy rendering all solutions. */
+        Sampling ALL = index -> true;
+
+        /** Returns a policy rendering the first {@code n} solutions. */
+        static Sampling first(long n) {
+            return index -> index < n;
+        }
+
+        /** Returns a policy rendering every {@code k}th solution, starting with the first. */
+        static Sampling every(long k) {
+            if (k <= 0) {
+                throw new IllegalArgumentException(String.format("Sampling interval %s is not positive", k));
+            }
+            return index -> index % k == 0;
+        }
+
+        /**
+         * Returns a policy rendering each solution with a given probability.
+         * The choice only depends on the index and the seed, so the same seed
+         * selects the same solutions, independently of timing or threads.
+         */
+        static Sampling random(double rate, long seed) {
+            return index -> {
+                // SplitMix64 finaliser of the index, offset by the seed
+                var z = seed + (index + 1) * 0x9e3779b97f4a7c15L;
+                z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+                z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+                z = z ^ (z >>> 31);
+                return (z >>> 11) * 0x1.0p-53 < rate;
+            };
+        }
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final Sampling sampling;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** Number of solutions passed to {@link #accept(SolutionView)} so far. */
+    private long solutionCount;
+    /** Number of graphs written so far. */
+    private long graphCount;
+
+    /** Constructs an exporter to a given channel, which is closed when the exporter is. */
+    public DotExporter(WritableByteChannel channel, Sampling sampling) {
+        this.channel = channel;
+        this.sampling = sampling;
+    }
+
+    /** Opens an exporter to a given file, which is created or truncated. */
+    public static DotExporter open(Path file, Sampling sampling) throws IOException {
+        return new DotExporter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), sampling);
+    }
+
+    /** Opens an exporter to a given file, rendering all solutions. */
+    public static DotExporter open(Path file) throws IOException {
+        return open(file, Sampling.ALL);
+    }
+
+    /** Returns the number of solutions offered to this exporter so far. */
+    public synchronized long getSolutionCount() {
+        return this.solutionCount;
+    }
+
+    /** Returns the number of graphs written by this exporter so far. */
+    public synchronized long getGraphCount() {
+        return this.graphCount;
+    }
+
+    /**
+     * Renders a solution if it is selected by the sampling policy. The graph
+     * is named after the product and the index of the solution.
+     * @throws UncheckedIOException if writing fails
+     */
+    @Override
+    public synchronized void accept(SolutionView solution) {
+        var index = this.solutionCount++;
+        if (this.sampling.test(index)) {
+            try {
+                write(solution.getProduct().name() + "-" + index, solution);
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+        }
+    }
+
+    /** Renders a solution as a graph with a given name, regardless of the sampling policy. */
+    public synchronized void write(String name, SolutionView solution) throws IOException {
+        var nodes = new LinkedHashSet<Node>();
+        for (var i = 0; i < solution.size(); i++) {
+            var edge = solution.getEdge(i);
+            nodes.addAll(edge.source());
+            nodes.add(edge.target());
+        }
+        writeHeader(name);
+        for (var node : nodes) {
+            writeNode(node.name(), "deepskyblue1");
+        }
+        for (var i = 0; i < solution.size(); i++) {
+            writeEdge(solution.getEdge(i), null);
+        }
+        writeFooter();
+    }
+
+    /**
+     * Renders a state of a search, consisting of the made nodes, the found
+     * nodes and the edges making them. Node labels are numbered in order.
+     */
+    synchronized void writeState(String name, List<Node> made, List<Node> found, List<Edge> edges)
+            throws IOException {
+        var labels = new HashMap<Node, String>();
+        writeHeader(name);
+        for (var node : made) {
+            var label = labels.size() + ": " + node.name();
+            labels.put(node, label);
+            writeNode(label, "deepskyblue1");
+        }
+        for (var node : found) {
+            var label = labels.size() + ": " + node.name();
+            labels.put(node, label);
+            writeNode(label, "cyan1");
+        }
+        for (var edge : edges) {
+            writeEdge(edge, labels);
+        }
+        writeFooter();
+    }
+
+    private void writeHeader(String name) throws IOException {
+        write("digraph ");
+        writeQuoted(name);
+        write(" {\nnode [style=filled,color=gold3,fillcolor=gold1,shape=box]\nedge [color=gold3]\n");
+    }
+
+    private void writeFooter() throws IOException {
+        write("}\n");
+        this.graphCount++;
+    }
+
+    private void writeNode(String label, String fill) throws IOException {
+        writeQuoted(label);
+        write(" [color=deepskyblue3,fillcolor=");
+        write(fill);
+        write(",shape=ellipse]\n");
+    }
+
+    /** Writes an edge as a box with arrows from its sources and to its target, labelled as given or by name. */
+    private void writeEdge(Edge edge, Map<Node, String> labels) throws IOException {
+        writeQuoted(edge.name());
+        write(" [height=0,width=0]\n");
+        var sources = edge.source();
+        for (var i = 0; i < sources.size(); i++) {
+            var source = sources.get(i);
+            writeQuoted(labels == null ? source.name() : labels.get(source));
+            write(" -> ");
+            writeQuoted(edge.name());
+            write(" [headlabel=\"");
+            write(Integer.toString(i));
+            write("\"]\n");
+        }
+        writeQuoted(edge.name());
+        write(" -> ");
+        writeQuoted(labels == null ? edge.target().name() : labels.get(edge.target()));
+        write("\n");
+    }
+
+    /** Writes a DOT string literal, escaping backslashes and double quotes. */
+    private void writeQuoted(String text) throws IOException {
+        write("\"");
+        write(text == null ? "" : text.replace("\\", "\\\\").replace("\"", "\\\""));
+        write("\"");
+    }
+
+    private void write(String text) throws IOException {
+        var length = text.length();
+        if (this.buffer.remaining() < length) {
+            flush();
+        }
+        var ascii = length <= this.buffer.remaining();
+        for (var i = 0; ascii && i < length; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            for (var i = 0; i < length; i++) {
+                this.buffer.put((byte) text.charAt(i));
+            }
+        } else {
+            var bytes = text.getBytes(StandardCharsets.UTF_8);
+            for (var pos = 0; pos < bytes.length;) {
+                if (!this.buffer.hasRemaining()) {
+                    flush();
+                }
+                var count = Math.min(this.buffer.remaining(), bytes.length - pos);
+                this.buffer.put(bytes, pos, count);
+                pos += count;
+            }
+        }
+    }
+
+    /** Writes the buffered output to the channel. */
+    public synchronized void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel.isOpen()) {
+            try {
+                flush();
+            } finally {
+                this.channel.close();
+            }
+        }
+    }
+
+    /** Returns the DOT rendering of a solution with a given name. */
+    public static String toDot(String name, SolutionView solution) {
+        return render(e -> e.write(name, solution));
+    }
+
+    /** Returns the DOT rendering of a state of a search; see {@link #writeState}. */
+    static String toDot(String name, List<Node> made, List<Node> found, List<Edge> edges) {
+        return render(e -> e.writeState(name, made, found, edges));
+    }
+
+    /** Renders graphs into a string. */
+    private static String render(Rendering rendering) {
+        var out = new ByteArrayOutputStream();
+        try (var exporter = new DotExporter(Channels.newChannel(out), Sampling.ALL)) {
+            rendering.render(exporter);
+        } catch (IOException exc) {
+            // writing to a byte array does not fail
+            throw new UncheckedIOException(exc);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Rendering action on an exporter. */
+    @FunctionalInterface
+    private interface Rendering {
+        void render(DotExporter exporter) throws IOException;
+    }
+}
@@ -0,0 +1,52 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.Comparator;
+
+/**
+ * Strategy for ordering the in-edges of the nodes of a graph facade. The
+ * search tries the in-edges of a node as makers in this order, so the ordering
+ * determines the order of the solutions, and in particular how long it takes
+ * to find the first one; the set of solutions is the same for every ordering.
+ * An ordering is selected per search, through
+ * {@link SearchOptions#withOrdering(EdgeOrdering)}.
+ * @author Arend Rensink
+ */
+public interface EdgeOrdering {
+    /**
+     * Returns a comparator for the in-edges of a node of a given facade. The
+     * comparator is used for all nodes while a compact graph is constructed.
+     */
+    Comparator<Edge> getComparator(GraphFacade gf);
+
+    /**
+     * Indicates whether this ordering changes as it learns from searches, so
+     * that compact graphs ordered by it cannot be reused.
+     */
+    default boolean isAdaptive() {
+        return false;
+    }
+
+    /** Callback for every solution found by a search that uses this ordering. */
+    default void solutionFound(SolutionView solution) {
+        // by default, orderings do not learn from the search
+    }
+
+    /** Edges with fewer sources first, then by name; this is the order of {@link GraphFacade#getInEdges(Node)}. */
+    EdgeOrdering DEFAULT = gf -> GraphFacade::compareEdges;
+
+    /** Edges of lower depth first, then in the default order. */
+    EdgeOrdering BY_DEPTH = gf -> Comparator.<Edge>comparingInt(gf::getDepth).thenComparing(GraphFacade::compareEdges);
+
+    /** Edges with fewer pre-nodes first, then in the default order. */
+    EdgeOrdering BY_PRE_SIZE = gf -> Comparator.<Edge>comparingInt(e -> gf.getPre(e).size())
+            .thenComparing(GraphFacade::compareEdges);
+
+    /**
+     * Returns a fresh ordering that puts the edges that occurred most often in
+     * the solutions found so far first.
+     * @see SuccessRateOrdering
+     */
+    static SuccessRateOrdering bySuccessRate() {
+        return new SuccessRateOrdering();
+    }
+}
@@ -0,0 +1,138 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.function.ToIntFunction;
+
+/**
+ * Non-negative integer weights of the edges of a compact graph, together with
+ * per-node lower bounds on the cost of making a node. The cost of a solution
+ * is the sum of the weights of its edges.
+ * @author Arend Rensink
+ */
+public class EdgeWeights {
+    private final CompactGraph cg;
+    /** Flag indicating that all weights are 1. */
+    private final boolean unit;
+    /** Weight of each edge. */
+    private final int[] weight;
+    /** Minimal weight of the in-edges of each node. */
+    private final int[] minInWeight;
+    /**
+     * Weighted depth of each node: the minimal cost, over all derivations of the
+     * node, of the most expensive chain from the node down to a generator.
+     */
+    private final int[] depth;
+
+    /** Constructs unit weights for a given graph. */
+    public EdgeWeights(CompactGraph cg) {
+        this(cg, e -> 1, true);
+    }
+
+    /** Constructs weights for a given graph, using a given (non-negative) weight function. */
+    public EdgeWeights(CompactGraph cg, ToIntFunction<Edge> weight) {
+        this(cg, weight, false);
+    }
+
+    private EdgeWeights(CompactGraph cg, ToIntFunction<Edge> weight, boolean unit) {
+        this.cg = cg;
+        this.weight = new int[cg.getEdgeCount()];
+        var allOnes = true;
+        for (var e = 0; e < this.weight.length; e++) {
+            var w = weight.applyAsInt(cg.getEdge(e));
+            if (w < 0) {
+                throw new IllegalArgumentException(String.format("Edge %s has negative weight %s", cg.getEdge(e), w));
+            }
+            this.weight[e] = w;
+            allOnes &= w == 1;
+        }
+        this.unit = unit || allOnes;
+        var nodeCount = cg.getNodeCount();
+        this.minInWeight = new int[nodeCount];
+        for (var n = 0; n < nodeCount; n++) {
+            var min = Integer.MAX_VALUE;
+            for (var i = 0; i < cg.getInEdgeCount(n); i++) {
+                min = Math.min(min, this.weight[cg.getInEdge(n, i)]);
+            }
+            this.minInWeight[n] = min;
+        }
+        this.depth = computeDepth();
+    }
+
+    /**
+     * Computes the weighted depths, in the manner of Knuth's generalisation of
+     * Dijkstra's algorithm: an edge is resolved once all its sources are, and
+     * nodes are settled in order of increasing depth.
+     */
+    private int[] computeDepth() {
+        var result = new int[this.cg.getNodeCount()];
+        Arrays.fill(result, Integer.MAX_VALUE);
+        var edgeCount = this.cg.getEdgeCount();
+        var unresolved = new int[edgeCount];
+        var edgeDepth = new int[edgeCount];
+        var queue = new PriorityQueue<long[]>((a, b) -> Long.compare(a[0], b[0]));
+        for (var e = 0; e < edgeCount; e++) {
+            unresolved[e] = this.cg.getSourceEnd(e) - this.cg.getSourceStart(e);
+            if (unresolved[e] == 0) {
+                queue.add(new long[] { this.weight[e], this.cg.getTarget(e) });
+            }
+        }
+        var settled = new boolean[result.length];
+        while (!queue.isEmpty()) {
+            var next = queue.poll();
+            var n = (int) next[1];
+            if (settled[n]) {
+                continue;
+            }
+            settled[n] = true;
+            result[n] = (int) Math.min(next[0], Integer.MAX_VALUE);
+            for (var i = this.cg.getOutStart(n); i < this.cg.getOutEnd(n); i++) {
+                var e = this.cg.getOut(i);
+                edgeDepth[e] = Math.max(edgeDepth[e], result[n]);
+                unresolved[e]--;
+                if (unresolved[e] == 0 && !settled[this.cg.getTarget(e)]) {
+                    queue.add(new long[] { (long) edgeDepth[e] + this.weight[e], this.cg.getTarget(e) });
+                }
+            }
+        }
+        return result;
+    }
+
+    public CompactGraph getCompactGraph() {
+        return this.cg;
+    }
+
+    /** Indicates whether all weights are 1, so that costs coincide with sizes. */
+    public boolean isUnit() {
+        return this.unit;
+    }
+
+    public int getWeight(int e) {
+        return this.weight[e];
+    }
+
+    /** Returns the minimal weight of the in-edges of a given node. */
+    public int getMinInWeight(int n) {
+        return this.minInWeight[n];
+    }
+
+    /**
+     * Returns the weighted depth of a given node, which is a lower bound on the
+     * cost of any derivation of the node.
+     */
+    public int getDepth(int n) {
+        return this.depth[n];
+    }
+
+    /**
+     * Returns the cost of a solution, i.e., the sum of the weights of its edges.
+     * The cost saturates at {@link Integer#MAX_VALUE}.
+     */
+    public int getCost(Solution solution) {
+        var result = 0L;
+        for (var i = 0; i < solution.size(); i++) {
+            result += this.weight[solution.getEdgeIx(i)];
+        }
+        return (int) Math.min(result, Integer.MAX_VALUE);
+    }
+}
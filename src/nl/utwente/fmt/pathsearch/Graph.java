@@ -1,5 +1,7 @@
 package nl.utwente.fmt.pathsearch;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -7,7 +9,9 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * Hypergraph
+ * Hypergraph. Changes made through the methods of this class are reported to
+ * the registered {@link GraphListener}s; changes made directly to the node or
+ * edge sets are not.
  * @author Arend Rensink
  *
  */
@@ -15,13 +19,23 @@ public class Graph {
 	private final String name;
 	private final Set<Node> nodes;
 	private final Set<Edge> edges;
+    private final List<GraphListener> listeners;
 	
 	public Graph(String name) {
 		this.name = name;
 		this.nodes = new LinkedHashSet<>();
 		this.edges = new LinkedHashSet<>();
+        this.listeners = new ArrayList<>();
 	}
 
+    public void addListener(GraphListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(GraphListener listener) {
+        this.listeners.remove(listener);
+    }
+
 	public String getName() {
 		return this.name;
 	}
@@ -35,13 +49,66 @@ public class Graph {
 	}
 
     public boolean addNode(Node node) {
-        return this.nodes.add(node);
+        var result = this.nodes.add(node);
+        if (result) {
+            for (var listener : this.listeners) {
+                listener.nodeAdded(node);
+            }
+        }
+        return result;
 	}
 
+    /** Removes a node, together with all edges that it is incident with. */
+    public boolean removeNode(Node node) {
+        var incident = new ArrayList<Edge>();
+        if (this.nodes.contains(node)) {
+            for (var edge : this.edges) {
+                if (edge.target().equals(node) || edge.source().contains(node)) {
+                    incident.add(edge);
+                }
+            }
+        }
+        return removeNode(node, incident);
+    }
+
+    /**
+     * Removes a node, together with given edges, which should include all edges
+     * that the node is incident with. Unlike {@link #removeNode(Node)}, this does
+     * not search the edges, so callers that index the edges by node can remove
+     * nodes in time proportional to their degree.
+     */
+    public boolean removeNode(Node node, Collection<Edge> incident) {
+        var result = this.nodes.contains(node);
+        if (result) {
+            incident.forEach(this::removeEdge);
+            this.nodes.remove(node);
+            for (var listener : this.listeners) {
+                listener.nodeRemoved(node);
+            }
+        }
+        return result;
+    }
+
     public boolean addEdge(Edge edge) {
-        return this.edges.add(edge);
+        var result = this.edges.add(edge);
+        if (result) {
+            for (var listener : this.listeners) {
+                listener.edgeAdded(edge);
+            }
+        }
+        return result;
 	}
 
+    public boolean removeEdge(Edge edge) {
+        var result = this.edges.remove(edge);
+        if (result) {
+            for (var listener : this.listeners) {
+                listener.edgeRemoved(edge);
+            }
+        }
+        return result;
+    }
+
     public boolean addNode(String name) {
         return addNode(new Node(name));
     }
@@ -12,14 +12,37 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
 
+/**
+ * Facade of a graph, offering derived maps that are computed on demand. When
+ * attached to its graph (see {@link #attach()}), the facade keeps the derived
+ * maps up to date as the graph changes: added edges are propagated through
+ * the pre and depth maps, and only the nodes whose values actually change are
+ * visited; removed edges mark the nodes forwards reachable from their targets
+ * as dirty, and these are recomputed the next time the maps are used.
+ * @author Arend Rensink
+ */
 public class GraphFacade {
     private final Graph graph;
+    /** Listener keeping the derived maps up to date; registered by {@link #attach()}. */
+    private final GraphListener listener = new Listener();
 
     public GraphFacade(Graph graph) {
         this.graph = graph;
     }
 
+    /** Subscribes this facade to the changes of its graph. */
+    public GraphFacade attach() {
+        this.graph.addListener(this.listener);
+        return this;
+    }
+
+    /** Unsubscribes this facade from the changes of its graph. */
+    public void detach() {
+        this.graph.removeListener(this.listener);
+    }
+
     public Graph getGraph() {
         return this.graph;
     }
@@ -43,6 +66,8 @@ public class GraphFacade {
     public Map<Node, Set<Node>> getNodePreMap() {
         if (this.nodePreMap == null) {
             computePreMaps();
+        } else {
+            repair();
         }
         return this.nodePreMap;
     }
@@ -54,41 +79,57 @@ public class GraphFacade {
     public Map<Edge, Set<Node>> getEdgePreMap() {
         if (this.edgePreMap == null) {
             computePreMaps();
+        } else {
+            repair();
         }
         return this.edgePreMap;
     }
 
+    /** Computes the pre maps from scratch, in level-synchronous sweeps (see {@link LayeredFixpoint}). */
     private void computePreMaps() {
-        Map<Node, Set<Node>> nodePreMap = new LinkedHashMap<>();
-        Map<Edge, Set<Node>> edgePreMap = new LinkedHashMap<>();
-        getEdges().stream().filter(e -> e.source().isEmpty()).forEach(e -> edgePreMap.put(e, Collections.emptySet()));
-        edgePreMap.keySet().stream().map(Edge::target).forEach(n -> nodePreMap.put(n, Collections.emptySet()));
-        var fresh = new LinkedList<>(nodePreMap.keySet());
+        var preMaps = new LayeredFixpoint(this).computePreMaps();
+        var nodePreMap = preMaps.nodePreMap();
+        var edgePreMap = preMaps.edgePreMap();
+        assert nodePreMap.keySet().equals(getNodes());
+        assert edgePreMap.keySet().equals(getEdges());
+        assert validPreMaps(nodePreMap, edgePreMap);
+        this.nodePreMap = nodePreMap;
+        this.edgePreMap = edgePreMap;
+    }
+
+    /** Propagates changes of the pre-sets of given fresh nodes to the rest of the graph. */
+    private void propagatePre(Map<Node, Set<Node>> nodePreMap, Map<Edge, Set<Node>> edgePreMap,
+            LinkedList<Node> fresh) {
         while (!fresh.isEmpty()) {
             var next = fresh.poll();
             for (Edge e : getOutEdges(next)) {
-                if (nodePreMap.keySet().containsAll(e.source())) {
-                    Set<Node> pre = new LinkedHashSet<>(e.source());
-                    e.source().stream().map(nodePreMap::get).forEach(pre::addAll);
-                    var ePre = edgePreMap.get(e);
-                    if (ePre == null || ePre.size() > pre.size()) {
-                        edgePreMap.put(e, pre);
-                        if (!nodePreMap.containsKey(e.target())) {
-                            assert !pre.contains(e.target());
-                            nodePreMap.put(e.target(), new LinkedHashSet<>(pre));
-                            fresh.add(e.target());
-                        } else if (nodePreMap.get(e.target()).retainAll(pre)) {
-                            fresh.add(e.target());
-                        }
-                    }
+                updatePre(e, nodePreMap, edgePreMap, fresh);
+            }
+        }
+    }
+
+    /**
+     * Recomputes the pre-set of an edge, if all its sources have one, and
+     * updates that of its target accordingly. If the pre-set of the target
+     * changes, the target is added to the fresh nodes.
+     */
+    private void updatePre(Edge e, Map<Node, Set<Node>> nodePreMap, Map<Edge, Set<Node>> edgePreMap,
+            LinkedList<Node> fresh) {
+        if (nodePreMap.keySet().containsAll(e.source())) {
+            Set<Node> pre = new LinkedHashSet<>(e.source());
+            e.source().stream().map(nodePreMap::get).forEach(pre::addAll);
+            var ePre = edgePreMap.get(e);
+            if (ePre == null || ePre.size() > pre.size()) {
+                edgePreMap.put(e, pre);
+                if (!nodePreMap.containsKey(e.target())) {
+                    assert !pre.contains(e.target());
+                    nodePreMap.put(e.target(), new LinkedHashSet<>(pre));
+                    fresh.add(e.target());
+                } else if (nodePreMap.get(e.target()).retainAll(pre)) {
+                    fresh.add(e.target());
                 }
             }
         }
-        assert nodePreMap.keySet().equals(getNodes());
-        assert edgePreMap.keySet().equals(getEdges());
-        assert validPreMaps(nodePreMap, edgePreMap);
-        this.nodePreMap = nodePreMap;
-        this.edgePreMap = edgePreMap;
     }
 
     private boolean validPreMaps(Map<Node, Set<Node>> nodePreMap, Map<Edge, Set<Node>> edgePreMap) {
@@ -114,6 +155,13 @@ public class GraphFacade {
     private Map<Node, Set<Node>> nodePreMap;
     private Map<Edge, Set<Node>> edgePreMap;
 
+    /** Sets the pre maps to precomputed values, for instance from a snapshot. */
+    void setPreMaps(Map<Node, Set<Node>> nodePreMap, Map<Edge, Set<Node>> edgePreMap) {
+        assert validPreMaps(nodePreMap, edgePreMap);
+        this.nodePreMap = nodePreMap;
+        this.edgePreMap = edgePreMap;
+    }
+
     public int getDepth(Node node) {
         var result = getNodeDepthMap().get(node);
         return result == null ? Integer.MAX_VALUE : result;
@@ -127,6 +175,8 @@ public class GraphFacade {
     public Map<Node, Integer> getNodeDepthMap() {
         if (this.nodeDepthMap == null) {
             computeDepthMaps();
+        } else {
+            repair();
         }
         return this.nodeDepthMap;
     }
@@ -134,40 +184,103 @@ public class GraphFacade {
     public Map<Edge, Integer> getEdgeDepthMap() {
         if (this.edgeDepthMap == null) {
             computeDepthMaps();
+        } else {
+            repair();
         }
         return this.edgeDepthMap;
     }
 
+    /** Computes the depth maps from scratch, in a level-synchronous sweep (see {@link LayeredFixpoint}). */
     private void computeDepthMaps() {
-        Map<Node, Integer> nodeMap = new LinkedHashMap<>();
-        Map<Edge, Integer> edgeMap = new LinkedHashMap<>();
-        getEdges().stream().filter(e -> e.source().isEmpty()).forEach(e -> edgeMap.put(e, 0));
-        edgeMap.keySet().stream().map(e -> e.target()).forEach(n -> nodeMap.put(n, 0));
-        var fresh = new LinkedList<>(nodeMap.keySet());
+        var fixpoint = new LayeredFixpoint(this);
+        this.nodeDepthMap = fixpoint.getNodeDepthMap();
+        this.edgeDepthMap = fixpoint.getEdgeDepthMap();
+    }
+
+    /** Propagates changes of the depths of given fresh nodes to the rest of the graph. */
+    private void propagateDepth(Map<Node, Integer> nodeMap, Map<Edge, Integer> edgeMap, LinkedList<Node> fresh) {
         while (!fresh.isEmpty()) {
             var next = fresh.pollFirst();
-            for (Edge e: getOutEdges(next)) {
-                if (nodeMap.keySet().containsAll(e.source())) {
-                    int depth = e.source().stream().map(n -> nodeMap.get(n)).reduce(0, Integer::max);
-                    edgeMap.put(e, depth + 1);
-                    if (!nodeMap.containsKey(e.target()) || nodeMap.get(e.target()) > depth + 1) {
-                        nodeMap.put(e.target(), depth + 1);
-                        fresh.add(e.target());
-                    }
-                }
+            for (Edge e : getOutEdges(next)) {
+                updateDepth(e, nodeMap, edgeMap, fresh);
+            }
+        }
+    }
+
+    /**
+     * Recomputes the depth of an edge, if all its sources have one, and updates
+     * that of its target accordingly. If the depth of the target decreases, the
+     * target is added to the fresh nodes.
+     */
+    private void updateDepth(Edge e, Map<Node, Integer> nodeMap, Map<Edge, Integer> edgeMap,
+            LinkedList<Node> fresh) {
+        if (e.source().isEmpty()) {
+            edgeMap.put(e, 0);
+            var old = nodeMap.get(e.target());
+            if (old == null || old > 0) {
+                nodeMap.put(e.target(), 0);
+                fresh.add(e.target());
+            }
+        } else if (nodeMap.keySet().containsAll(e.source())) {
+            int depth = e.source().stream().map(n -> nodeMap.get(n)).reduce(0, Integer::max);
+            edgeMap.put(e, depth + 1);
+            if (!nodeMap.containsKey(e.target()) || nodeMap.get(e.target()) > depth + 1) {
+                nodeMap.put(e.target(), depth + 1);
+                fresh.add(e.target());
             }
         }
-        this.nodeDepthMap = nodeMap;
-        this.edgeDepthMap = edgeMap;
     }
 
     private Map<Node, Integer> nodeDepthMap;
     private Map<Edge, Integer> edgeDepthMap;
 
+    /** Sets the depth maps to precomputed values, for instance from a snapshot. */
+    void setDepthMaps(Map<Node, Integer> nodeDepthMap, Map<Edge, Integer> edgeDepthMap) {
+        this.nodeDepthMap = nodeDepthMap;
+        this.edgeDepthMap = edgeDepthMap;
+    }
+
     public List<Edge> getInEdges(Node node) {
         return getInEdgeMap().get(node);
     }
 
+    /**
+     * Returns the in-edges of a node, grouped into classes of equivalent edges,
+     * which are those with the same multiset of sources. Equivalent edges have
+     * the same pre-nodes, and replacing one by another in a solution yields
+     * another solution. The classes are ordered by their first edge, and contain
+     * their edges in the order of {@link #getInEdges(Node)}. The classes are
+     * computed anew upon every call.
+     */
+    public List<List<Edge>> getInEdgeClasses(Node node) {
+        return toClasses(getInEdges(node));
+    }
+
+    /** Groups a list of in-edges of a node into classes of equivalent edges, preserving their order. */
+    static List<List<Edge>> toClasses(List<Edge> inEdges) {
+        var result = new ArrayList<List<Edge>>();
+        for (var positions : toClassPositions(inEdges)) {
+            var edges = new ArrayList<Edge>(positions.size());
+            positions.forEach(i -> edges.add(inEdges.get(i)));
+            result.add(edges);
+        }
+        return result;
+    }
+
+    /**
+     * Groups a list of in-edges of a node into classes of equivalent edges, as
+     * {@link #toClasses(List)} does, but returns the positions of the edges in
+     * the list rather than the edges themselves.
+     */
+    static List<List<Integer>> toClassPositions(List<Edge> inEdges) {
+        var classes = new LinkedHashMap<Map<Node, Long>, List<Integer>>();
+        for (var i = 0; i < inEdges.size(); i++) {
+            var sources = inEdges.get(i).source().stream().collect(Collectors.groupingBy(n -> n, Collectors.counting()));
+            classes.computeIfAbsent(sources, k -> new ArrayList<>()).add(i);
+        }
+        return new ArrayList<>(classes.values());
+    }
+
     public Map<Node, List<Edge>> getInEdgeMap() {
         if (this.inEdgeMap == null) {
             this.inEdgeMap = computeInEdgeMap();
@@ -187,6 +300,44 @@ public class GraphFacade {
     /** Mapping from nodes to their incoming edges. */
     private Map<Node, List<Edge>> inEdgeMap;
 
+    /**
+     * Returns all incoming edges of a node, including those left out of
+     * {@link #getInEdges(Node)} because an equal edge (see
+     * {@link #compareEdges(Edge, Edge)}) came first. The list is computed anew
+     * upon every call.
+     */
+    List<Edge> getAllInEdges(Node node) {
+        var result = new ArrayList<>(getInEdges(node));
+        result.addAll(getShadowMap().getOrDefault(node, List.of()));
+        return result;
+    }
+
+    private Map<Node, List<Edge>> getShadowMap() {
+        if (this.shadowMap == null) {
+            this.shadowMap = computeShadowMap();
+        }
+        return this.shadowMap;
+    }
+
+    private Map<Node, List<Edge>> computeShadowMap() {
+        var inEdgeMap = getInEdgeMap();
+        Map<Node, List<Edge>> result = new HashMap<>();
+        for (var e : this.graph.getEdges()) {
+            var inEdges = inEdgeMap.get(e.target());
+            var ix = Collections.binarySearch(inEdges, e, GraphFacade::compareEdges);
+            if (ix < 0 || !inEdges.get(ix).equals(e)) {
+                result.computeIfAbsent(e.target(), k -> new ArrayList<>()).add(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Mapping from nodes to the incoming edges left out of {@link #inEdgeMap},
+     * in the order in which they were added to the graph; computed on demand.
+     */
+    private Map<Node, List<Edge>> shadowMap;
+
     public List<Edge> getOutEdges(Node node) {
         return getOutEdgeMap().get(node);
     }
@@ -208,7 +359,193 @@ public class GraphFacade {
     /** Mapping from nodes to their incoming edges. */
     private Map<Node, List<Edge>> outEdgeMap;
 
-    static private int compareEdges(Edge e1, Edge e2) {
+    /** Sets the in- and out-edge maps to precomputed values, for instance from a snapshot. */
+    void setEdgeMaps(Map<Node, List<Edge>> inEdgeMap, Map<Node, List<Edge>> outEdgeMap) {
+        this.inEdgeMap = inEdgeMap;
+        this.outEdgeMap = outEdgeMap;
+        this.shadowMap = null;
+    }
+
+    /**
+     * Returns a frozen, integer-indexed copy of this facade, for use in the search.
+     * If the facade is attached to its graph, a new copy is made after the graph
+     * has changed.
+     */
+    public CompactGraph getCompactGraph() {
+        repair();
+        if (this.compactGraph == null) {
+            this.compactGraph = new CompactGraph(this);
+        }
+        return this.compactGraph;
+    }
+
+    private CompactGraph compactGraph;
+
+    private void nodeAdded(Node node) {
+        this.compactGraph = null;
+        if (this.inEdgeMap != null) {
+            this.inEdgeMap.put(node, new ArrayList<>());
+        }
+        if (this.outEdgeMap != null) {
+            this.outEdgeMap.put(node, new ArrayList<>());
+        }
+    }
+
+    private void nodeRemoved(Node node) {
+        this.compactGraph = null;
+        if (this.inEdgeMap != null) {
+            this.inEdgeMap.remove(node);
+        }
+        if (this.shadowMap != null) {
+            this.shadowMap.remove(node);
+        }
+        if (this.outEdgeMap != null) {
+            this.outEdgeMap.remove(node);
+        }
+        if (this.nodePreMap != null) {
+            this.nodePreMap.remove(node);
+        }
+        if (this.nodeDepthMap != null) {
+            this.nodeDepthMap.remove(node);
+        }
+        this.dirty.remove(node);
+    }
+
+    private void edgeAdded(Edge edge) {
+        this.compactGraph = null;
+        if (this.inEdgeMap != null) {
+            var inEdges = this.inEdgeMap.get(edge.target());
+            var ix = Collections.binarySearch(inEdges, edge, GraphFacade::compareEdges);
+            // as in the sorted set from which the list was built, the first of equal edges is kept
+            if (ix < 0) {
+                inEdges.add(-ix - 1, edge);
+            } else if (this.shadowMap != null) {
+                this.shadowMap.computeIfAbsent(edge.target(), k -> new ArrayList<>()).add(edge);
+            }
+        }
+        if (this.outEdgeMap != null) {
+            edge.source().forEach(n -> this.outEdgeMap.get(n).add(edge));
+        }
+        if (!this.dirty.isEmpty()) {
+            this.dirty.add(edge.target());
+        } else {
+            if (this.nodePreMap != null) {
+                var fresh = new LinkedList<Node>();
+                updatePre(edge, this.nodePreMap, this.edgePreMap, fresh);
+                propagatePre(this.nodePreMap, this.edgePreMap, fresh);
+            }
+            if (this.nodeDepthMap != null) {
+                var fresh = new LinkedList<Node>();
+                updateDepth(edge, this.nodeDepthMap, this.edgeDepthMap, fresh);
+                propagateDepth(this.nodeDepthMap, this.edgeDepthMap, fresh);
+            }
+        }
+    }
+
+    private void edgeRemoved(Edge edge) {
+        this.compactGraph = null;
+        if (this.inEdgeMap != null) {
+            var inEdges = this.inEdgeMap.get(edge.target());
+            if (inEdges.remove(edge)) {
+                // an equal edge that was left out before may now take its place
+                var shadowed = getShadowMap().get(edge.target());
+                if (shadowed != null) {
+                    for (var iter = shadowed.iterator(); iter.hasNext();) {
+                        var e = iter.next();
+                        if (compareEdges(e, edge) == 0) {
+                            iter.remove();
+                            inEdges.add(-Collections.binarySearch(inEdges, e, GraphFacade::compareEdges) - 1, e);
+                            break;
+                        }
+                    }
+                }
+            } else if (this.shadowMap != null && this.shadowMap.containsKey(edge.target())) {
+                this.shadowMap.get(edge.target()).remove(edge);
+            }
+        }
+        if (this.outEdgeMap != null) {
+            edge.source().forEach(n -> this.outEdgeMap.get(n).remove(edge));
+        }
+        if (this.edgePreMap != null) {
+            this.edgePreMap.remove(edge);
+        }
+        if (this.edgeDepthMap != null) {
+            this.edgeDepthMap.remove(edge);
+        }
+        if (this.nodePreMap != null || this.nodeDepthMap != null) {
+            this.dirty.add(edge.target());
+        }
+    }
+
+    /**
+     * Recomputes the pre and depth maps for the nodes that are forwards reachable
+     * from the dirty nodes, i.e., the targets of removed edges.
+     */
+    private void repair() {
+        if (this.dirty.isEmpty()) {
+            return;
+        }
+        var region = new HashSet<Node>();
+        var queue = new LinkedList<Node>();
+        for (var node : this.dirty) {
+            if (region.add(node)) {
+                queue.add(node);
+            }
+        }
+        this.dirty.clear();
+        while (!queue.isEmpty()) {
+            for (var e : getOutEdges(queue.poll())) {
+                if (region.add(e.target())) {
+                    queue.add(e.target());
+                }
+            }
+        }
+        var into = new ArrayList<Edge>();
+        region.forEach(n -> into.addAll(getAllInEdges(n)));
+        if (this.nodePreMap != null) {
+            this.nodePreMap.keySet().removeAll(region);
+            into.forEach(this.edgePreMap::remove);
+            var fresh = new LinkedList<Node>();
+            into.forEach(e -> updatePre(e, this.nodePreMap, this.edgePreMap, fresh));
+            propagatePre(this.nodePreMap, this.edgePreMap, fresh);
+        }
+        if (this.nodeDepthMap != null) {
+            this.nodeDepthMap.keySet().removeAll(region);
+            into.forEach(this.edgeDepthMap::remove);
+            var fresh = new LinkedList<Node>();
+            into.forEach(e -> updateDepth(e, this.nodeDepthMap, this.edgeDepthMap, fresh));
+            propagateDepth(this.nodeDepthMap, this.edgeDepthMap, fresh);
+        }
+    }
+
+    /** Listener forwarding the changes of the graph to the facade. */
+    private class Listener implements GraphListener {
+        @Override
+        public void nodeAdded(Node node) {
+            GraphFacade.this.nodeAdded(node);
+        }
+
+        @Override
+        public void nodeRemoved(Node node) {
+            GraphFacade.this.nodeRemoved(node);
+        }
+
+        @Override
+        public void edgeAdded(Edge edge) {
+            GraphFacade.this.edgeAdded(edge);
+        }
+
+        @Override
+        public void edgeRemoved(Edge edge) {
+            GraphFacade.this.edgeRemoved(edge);
+        }
+    }
+
+    /** Targets of removed edges, from which the pre and depth maps still have to be repaired. */
+    private final Set<Node> dirty = new LinkedHashSet<>();
+
+    /** Compares edges by their number of sources, then by name; this is the default in-edge order. */
+    static int compareEdges(Edge e1, Edge e2) {
         var result = e1.source().size() - e2.source().size();
         if (result == 0) {
             result = e1.name().compareTo(e2.name());
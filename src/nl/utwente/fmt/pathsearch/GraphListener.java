@@ -0,0 +1,20 @@
+package nl.utwente.fmt.pathsearch;
+
+/**
+ * Listener to changes of a {@link Graph}. Listeners are notified after the
+ * change has been made.
+ * @author Arend Rensink
+ */
+public interface GraphListener {
+    default void nodeAdded(Node node) {
+        // by default, only edges are of interest
+    }
+
+    default void nodeRemoved(Node node) {
+        // by default, only edges are of interest
+    }
+
+    void edgeAdded(Edge edge);
+
+    void edgeRemoved(Edge edge);
+}
@@ -0,0 +1,207 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary snapshot of a graph facade, including its derived maps, so that a
+ * pruned graph can be made ready for search without re-reading and re-pruning
+ * the original graph. Snapshots are written once and memory-mapped when read.
+ * <p>
+ * The format consists of a magic number and version, followed by the graph
+ * name, the node names, the edges (name, target and sources), and the in-edge,
+ * out-edge, pre and depth maps. Nodes and edges are referred to by their
+ * position in the graph.
+ * @author Arend Rensink
+ */
+public class GraphSnapshot {
+    /** Magic number at the start of every snapshot. */
+    private static final int MAGIC = 0x50534e50;
+    /** Current version of the snapshot format. */
+    private static final int VERSION = 1;
+
+    private GraphSnapshot() {
+        // static methods only
+    }
+
+    /** Writes a snapshot of a graph facade, computing its derived maps if necessary. */
+    public static void save(GraphFacade gf, Path file) throws IOException {
+        var nodeIxMap = new HashMap<Node, Integer>();
+        gf.getNodes().forEach(n -> nodeIxMap.put(n, nodeIxMap.size()));
+        var edgeIxMap = new HashMap<Edge, Integer>();
+        gf.getEdges().forEach(e -> edgeIxMap.put(e, edgeIxMap.size()));
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, gf.getName());
+            out.writeInt(nodeIxMap.size());
+            for (var node : gf.getNodes()) {
+                writeString(out, node.name());
+            }
+            out.writeInt(edgeIxMap.size());
+            for (var edge : gf.getEdges()) {
+                writeString(out, edge.name());
+                out.writeInt(nodeIxMap.get(edge.target()));
+                writeAll(out, edge.source(), nodeIxMap);
+            }
+            for (var node : gf.getNodes()) {
+                writeAll(out, gf.getInEdges(node), edgeIxMap);
+            }
+            for (var node : gf.getNodes()) {
+                writeAll(out, gf.getOutEdges(node), edgeIxMap);
+            }
+            writeMap(out, gf.getNodePreMap(), nodeIxMap, nodeIxMap);
+            writeMap(out, gf.getEdgePreMap(), edgeIxMap, nodeIxMap);
+            out.writeInt(gf.getNodeDepthMap().size());
+            for (var entry : gf.getNodeDepthMap().entrySet()) {
+                out.writeInt(nodeIxMap.get(entry.getKey()));
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(gf.getEdgeDepthMap().size());
+            for (var entry : gf.getEdgeDepthMap().entrySet()) {
+                out.writeInt(edgeIxMap.get(entry.getKey()));
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot, and returns a graph facade whose derived maps are already set.
+     * @throws IOException if the file is not a snapshot, or is truncated or corrupt
+     */
+    public static GraphFacade load(Path file) throws IOException {
+        ByteBuffer in;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException(file + " is not a graph snapshot");
+        }
+        var version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported snapshot version %s in %s", version, file));
+        }
+        try {
+            return read(in);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException exc) {
+            throw new IOException(String.format("Snapshot %s is truncated or corrupt", file), exc);
+        }
+    }
+
+    /** Reads the contents of a snapshot, after the magic number and version. */
+    private static GraphFacade read(ByteBuffer in) {
+        var graph = new Graph(readString(in));
+        var nodes = new Node[readCount(in)];
+        for (var i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(readString(in));
+            graph.addNode(nodes[i]);
+        }
+        var edges = new Edge[readCount(in)];
+        for (var i = 0; i < edges.length; i++) {
+            var name = readString(in);
+            var target = nodes[in.getInt()];
+            edges[i] = new Edge(readAll(in, nodes, new ArrayList<>()), name, target);
+            graph.addEdge(edges[i]);
+        }
+        var inEdgeMap = new HashMap<Node, List<Edge>>();
+        for (var node : nodes) {
+            inEdgeMap.put(node, readAll(in, edges, new ArrayList<>()));
+        }
+        var outEdgeMap = new HashMap<Node, List<Edge>>();
+        for (var node : nodes) {
+            outEdgeMap.put(node, readAll(in, edges, new ArrayList<>()));
+        }
+        var nodePreMap = readMap(in, nodes, nodes);
+        var edgePreMap = readMap(in, edges, nodes);
+        var nodeDepthMap = new LinkedHashMap<Node, Integer>();
+        for (var i = readCount(in); i > 0; i--) {
+            nodeDepthMap.put(nodes[in.getInt()], in.getInt());
+        }
+        var edgeDepthMap = new LinkedHashMap<Edge, Integer>();
+        for (var i = readCount(in); i > 0; i--) {
+            edgeDepthMap.put(edges[in.getInt()], in.getInt());
+        }
+        var result = new GraphFacade(graph);
+        result.setEdgeMaps(inEdgeMap, outEdgeMap);
+        result.setPreMaps(nodePreMap, edgePreMap);
+        result.setDepthMaps(nodeDepthMap, edgeDepthMap);
+        return result;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the number of elements of a collection, each of which takes at
+     * least four bytes, so that a corrupt count cannot cause a huge allocation.
+     * @throws BufferUnderflowException if there are not enough bytes left
+     */
+    private static int readCount(ByteBuffer in) {
+        var result = in.getInt();
+        if (result < 0 || result > in.remaining() / 4) {
+            throw new BufferUnderflowException();
+        }
+        return result;
+    }
+
+    private static String readString(ByteBuffer in) {
+        var length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        var bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static <T> void writeAll(DataOutputStream out, Collection<T> elements, Map<T, Integer> ixMap)
+            throws IOException {
+        out.writeInt(elements.size());
+        for (var element : elements) {
+            out.writeInt(ixMap.get(element));
+        }
+    }
+
+    private static <T, C extends Collection<T>> C readAll(ByteBuffer in, T[] elements, C result) {
+        for (var i = readCount(in); i > 0; i--) {
+            result.add(elements[in.getInt()]);
+        }
+        return result;
+    }
+
+    private static <K> void writeMap(DataOutputStream out, Map<K, Set<Node>> map, Map<K, Integer> keyIxMap,
+            Map<Node, Integer> nodeIxMap) throws IOException {
+        out.writeInt(map.size());
+        for (var entry : map.entrySet()) {
+            out.writeInt(keyIxMap.get(entry.getKey()));
+            writeAll(out, entry.getValue(), nodeIxMap);
+        }
+    }
+
+    private static <K> Map<K, Set<Node>> readMap(ByteBuffer in, K[] keys, Node[] nodes) {
+        var result = new LinkedHashMap<K, Set<Node>>();
+        for (var i = readCount(in); i > 0; i--) {
+            result.put(keys[in.getInt()], readAll(in, nodes, new LinkedHashSet<>()));
+        }
+        return result;
+    }
+}
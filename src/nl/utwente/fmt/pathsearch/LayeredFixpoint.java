@@ -0,0 +1,368 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Computation of the depth and pre maps of a graph facade by level-synchronous
+ * sweeps. Nodes are partitioned into layers by depth; each layer is processed
+ * as a whole, in parallel on the common fork-join pool if it is large enough.
+ * <p>
+ * The depths are computed in a single breadth-first sweep: the nodes of layer
+ * {@code k + 1} are the targets of edges whose last source was reached in
+ * layer {@code k}. The pre-sets are computed as sparse bitsets, sweeping the
+ * layers in order and intersecting, for every node, the pre-sets of its
+ * in-edges whose sources already have one; sweeps are repeated until nothing
+ * changes. The intermediate results are kept in dense scratch rows, one pair
+ * per thread, of which only the words in use are visited. Since
+ * every intermediate value stems from actual derivations, this converges to
+ * the same fixpoint as the worklist algorithm of {@link GraphFacade}.
+ * @author Arend Rensink
+ */
+class LayeredFixpoint {
+    /** Minimal layer size for which the layer is processed in parallel. */
+    private static final int PARALLEL_THRESHOLD = 128;
+
+    private final Node[] nodes;
+    private final Edge[] edges;
+    /** Number of each edge's target. */
+    private final int[] target;
+    /** Start of the (distinct) sources of each edge in {@link #source}. */
+    private final int[] sourceStart;
+    private final int[] source;
+    /** Start of the in-edges of each node in {@link #in}. */
+    private final int[] inStart;
+    private final int[] in;
+    /** Start of the out-edges of each node in {@link #out}; every edge occurs once per node. */
+    private final int[] outStart;
+    private final int[] out;
+    /** Depth of each node; {@code -1} if the node cannot be derived. */
+    private final int[] depth;
+    /** The layers of nodes, by depth. */
+    private final List<int[]> layers;
+
+    LayeredFixpoint(GraphFacade gf) {
+        this.nodes = gf.getNodes().toArray(new Node[0]);
+        this.edges = gf.getEdges().toArray(new Edge[0]);
+        var nodeIxMap = new HashMap<Node, Integer>();
+        for (var n = 0; n < this.nodes.length; n++) {
+            nodeIxMap.put(this.nodes[n], n);
+        }
+        this.target = new int[this.edges.length];
+        this.sourceStart = new int[this.edges.length + 1];
+        var sources = new ArrayList<int[]>(this.edges.length);
+        var sourceCount = 0;
+        this.inStart = new int[this.nodes.length + 1];
+        this.outStart = new int[this.nodes.length + 1];
+        for (var e = 0; e < this.edges.length; e++) {
+            var edge = this.edges[e];
+            this.target[e] = nodeIxMap.get(edge.target());
+            this.inStart[this.target[e]]++;
+            var s = edge.source().stream().distinct().mapToInt(nodeIxMap::get).toArray();
+            for (var n : s) {
+                this.outStart[n]++;
+            }
+            sources.add(s);
+            this.sourceStart[e] = sourceCount;
+            sourceCount += s.length;
+        }
+        this.sourceStart[this.edges.length] = sourceCount;
+        this.source = new int[sourceCount];
+        for (var e = 0; e < this.edges.length; e++) {
+            System.arraycopy(sources.get(e), 0, this.source, this.sourceStart[e], sources.get(e).length);
+        }
+        // turn the degrees into end positions, then fill backwards
+        for (var n = 0; n < this.nodes.length; n++) {
+            this.inStart[n + 1] += this.inStart[n];
+            this.outStart[n + 1] += this.outStart[n];
+        }
+        this.in = new int[this.edges.length];
+        this.out = new int[sourceCount];
+        for (var e = this.edges.length - 1; e >= 0; e--) {
+            this.in[--this.inStart[this.target[e]]] = e;
+            for (var i = this.sourceStart[e]; i < this.sourceStart[e + 1]; i++) {
+                this.out[--this.outStart[this.source[i]]] = e;
+            }
+        }
+        this.depth = new int[this.nodes.length];
+        this.layers = new ArrayList<>();
+        computeLayers();
+    }
+
+    /** Assigns the depths and layers of all nodes, in a breadth-first sweep. */
+    private void computeLayers() {
+        Arrays.fill(this.depth, -1);
+        var claimed = new AtomicIntegerArray(this.depth.length);
+        var remaining = new AtomicIntegerArray(this.edges.length);
+        var layer = new ArrayList<Integer>();
+        for (var e = 0; e < this.edges.length; e++) {
+            var count = this.sourceStart[e + 1] - this.sourceStart[e];
+            remaining.set(e, count);
+            if (count == 0 && claimed.compareAndSet(this.target[e], 0, 1)) {
+                layer.add(this.target[e]);
+            }
+        }
+        var next = layer.stream().mapToInt(Integer::intValue).toArray();
+        while (next.length > 0) {
+            var current = next;
+            var k = this.layers.size();
+            this.layers.add(current);
+            for (var n : current) {
+                this.depth[n] = k;
+            }
+            next = stream(current).flatMap(n -> IntStream.range(this.outStart[n], this.outStart[n + 1])
+                    .map(i -> this.out[i])
+                    .filter(e -> remaining.decrementAndGet(e) == 0)
+                    .map(e -> this.target[e])
+                    .filter(t -> claimed.compareAndSet(t, 0, 1)))
+                    .toArray();
+        }
+    }
+
+    /** Returns a stream over a layer, which is parallel if the layer is large. */
+    private static IntStream stream(int[] layer) {
+        var result = Arrays.stream(layer);
+        return layer.length >= PARALLEL_THRESHOLD ? result.parallel() : result;
+    }
+
+    /** Returns the depths of the derivable nodes. */
+    Map<Node, Integer> getNodeDepthMap() {
+        var result = new LinkedHashMap<Node, Integer>();
+        for (var layer : this.layers) {
+            for (var n : layer) {
+                result.put(this.nodes[n], this.depth[n]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the depths of the edges whose sources are all derivable; the depth
+     * of an edge is one more than that of its deepest source, or 0 for a
+     * generator.
+     */
+    Map<Edge, Integer> getEdgeDepthMap() {
+        var result = new LinkedHashMap<Edge, Integer>();
+        for (var e = 0; e < this.edges.length; e++) {
+            var edgeDepth = getEdgeDepth(e);
+            if (edgeDepth >= 0) {
+                result.put(this.edges[e], edgeDepth);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the depth of an edge, or {@code -1} if not all its sources are derivable. */
+    private int getEdgeDepth(int e) {
+        if (this.sourceStart[e] == this.sourceStart[e + 1]) {
+            return 0;
+        }
+        var result = 0;
+        for (var i = this.sourceStart[e]; i < this.sourceStart[e + 1]; i++) {
+            var d = this.depth[this.source[i]];
+            if (d < 0) {
+                return -1;
+            }
+            result = Math.max(result, d + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the pre-sets of the derivable nodes and edges.
+     * @return a pair consisting of the node and the edge pre map
+     */
+    PreMaps computePreMaps() {
+        var words = (this.nodes.length + 63) >>> 6;
+        var scratch = ThreadLocal.withInitial(() -> new Scratch(words));
+        var pre = new Bits[this.nodes.length];
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (var layer : this.layers) {
+                // compute the layer from the current values, then commit
+                var values = stream(layer).mapToObj(n -> computeNodePre(n, pre, scratch.get())).toArray(Bits[]::new);
+                for (var i = 0; i < layer.length; i++) {
+                    var n = layer[i];
+                    if (pre[n] == null ? values[i] != null : !pre[n].sameAs(values[i])) {
+                        pre[n] = values[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        var nodePreMap = new LinkedHashMap<Node, Set<Node>>();
+        for (var layer : this.layers) {
+            for (var n : layer) {
+                nodePreMap.put(this.nodes[n], toSet(pre[n]));
+            }
+        }
+        var edgePreMap = new LinkedHashMap<Edge, Set<Node>>();
+        var edgeScratch = scratch.get();
+        for (var e = 0; e < this.edges.length; e++) {
+            if (computeEdgePre(e, pre, edgeScratch)) {
+                edgePreMap.put(this.edges[e], toSet(edgeScratch.getEdgeBits()));
+            }
+        }
+        return new PreMaps(nodePreMap, edgePreMap);
+    }
+
+    /** Pair of node and edge pre maps. */
+    record PreMaps(Map<Node, Set<Node>> nodePreMap, Map<Edge, Set<Node>> edgePreMap) {
+        // no additional members
+    }
+
+    /**
+     * Computes the pre-set of a node as the intersection of the pre-sets of its
+     * in-edges whose sources all have a pre-set, or returns {@code null} if
+     * there are no such in-edges.
+     */
+    private Bits computeNodePre(int n, Bits[] pre, Scratch scratch) {
+        var found = false;
+        for (var i = this.inStart[n]; i < this.inStart[n + 1]; i++) {
+            if (!computeEdgePre(this.in[i], pre, scratch)) {
+                continue;
+            }
+            if (found) {
+                scratch.intersectEdge();
+            } else {
+                scratch.copyEdge();
+                found = true;
+            }
+        }
+        return found ? scratch.getNodeBits() : null;
+    }
+
+    /**
+     * Computes the pre-set of an edge in the edge row of a scratch, as the union
+     * of its sources and their pre-sets. Returns {@code false} if some source
+     * has no pre-set yet.
+     */
+    private boolean computeEdgePre(int e, Bits[] pre, Scratch scratch) {
+        scratch.clearEdge();
+        for (var i = this.sourceStart[e]; i < this.sourceStart[e + 1]; i++) {
+            var s = this.source[i];
+            var sourcePre = pre[s];
+            if (sourcePre == null) {
+                return false;
+            }
+            scratch.addEdge(s >>> 6, 1L << s);
+            for (var j = 0; j < sourcePre.word().length; j++) {
+                scratch.addEdge(sourcePre.word()[j], sourcePre.mask()[j]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sparse bitset over the node numbers, consisting of the indices of the
+     * non-zero words, in increasing order, and these words.
+     */
+    private record Bits(int[] word, long[] mask) {
+        /** Indicates whether this bitset has the same elements as another. */
+        boolean sameAs(Bits other) {
+            return other != null && Arrays.equals(this.word, other.word) && Arrays.equals(this.mask, other.mask);
+        }
+    }
+
+    /**
+     * Dense rows in which the pre-sets of an edge and a node are computed, each
+     * with the list of its non-zero words, so that it can be read and cleared
+     * without visiting the other words. Every thread has its own scratch.
+     */
+    private static class Scratch {
+        private final long[] edgeRow;
+        private final int[] edgeWords;
+        private int edgeWordCount;
+        private final long[] nodeRow;
+        private final int[] nodeWords;
+        private int nodeWordCount;
+
+        Scratch(int words) {
+            this.edgeRow = new long[words];
+            this.edgeWords = new int[words];
+            this.nodeRow = new long[words];
+            this.nodeWords = new int[words];
+        }
+
+        void clearEdge() {
+            for (var i = 0; i < this.edgeWordCount; i++) {
+                this.edgeRow[this.edgeWords[i]] = 0;
+            }
+            this.edgeWordCount = 0;
+        }
+
+        /** Adds the bits of a non-zero word to the edge row. */
+        void addEdge(int w, long mask) {
+            if (this.edgeRow[w] == 0) {
+                this.edgeWords[this.edgeWordCount++] = w;
+            }
+            this.edgeRow[w] |= mask;
+        }
+
+        /** Replaces the node row by the edge row. */
+        void copyEdge() {
+            for (var i = 0; i < this.nodeWordCount; i++) {
+                this.nodeRow[this.nodeWords[i]] = 0;
+            }
+            for (var i = 0; i < this.edgeWordCount; i++) {
+                var w = this.edgeWords[i];
+                this.nodeRow[w] = this.edgeRow[w];
+                this.nodeWords[i] = w;
+            }
+            this.nodeWordCount = this.edgeWordCount;
+        }
+
+        /** Intersects the node row with the edge row. */
+        void intersectEdge() {
+            var count = 0;
+            for (var i = 0; i < this.nodeWordCount; i++) {
+                var w = this.nodeWords[i];
+                this.nodeRow[w] &= this.edgeRow[w];
+                if (this.nodeRow[w] != 0) {
+                    this.nodeWords[count++] = w;
+                }
+            }
+            this.nodeWordCount = count;
+        }
+
+        Bits getEdgeBits() {
+            return toBits(this.edgeRow, this.edgeWords, this.edgeWordCount);
+        }
+
+        Bits getNodeBits() {
+            return toBits(this.nodeRow, this.nodeWords, this.nodeWordCount);
+        }
+
+        private static Bits toBits(long[] row, int[] words, int count) {
+            var word = Arrays.copyOf(words, count);
+            Arrays.sort(word);
+            var mask = new long[count];
+            for (var i = 0; i < count; i++) {
+                mask[i] = row[word[i]];
+            }
+            return new Bits(word, mask);
+        }
+    }
+
+    /** Converts a bitset over the node numbers into a (modifiable) set of nodes. */
+    private Set<Node> toSet(Bits bits) {
+        var result = new LinkedHashSet<Node>();
+        for (var i = 0; i < bits.word().length; i++) {
+            var word = bits.mask()[i];
+            while (word != 0) {
+                result.add(this.nodes[(bits.word()[i] << 6) + Long.numberOfTrailingZeros(word)]);
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+}
@@ -1,11 +1,20 @@
 package nl.utwente.fmt.pathsearch;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
 public class MySearch implements Search {
     /** Flag controlling whether log messages are emitted. */
-    private static boolean LOG = true;
+    static boolean LOG = true;
 
     private static void log(String message, Object... args) {
         if (LOG) {
@@ -14,16 +23,130 @@ public class MySearch implements Search {
         }
     }
 
+    /** Maximal number of product cones kept in the cache. */
+    static final int CONE_CACHE_SIZE = 64;
+
+    /** Facade of the original graph; {@code null} if the search was constructed from a pruned graph. */
+    private final GraphFacade original;
+    /** Facade of the pruned graph, which is attached to it. */
     private final GraphFacade gf;
+    /** Cache of the most recently used product cones; see {@link #getCompactGraph(Node, EdgeOrdering)}. */
+    private final Map<ConeKey, CompactGraph> coneCache = new LruCache<>(CONE_CACHE_SIZE);
+    /** Listener keeping the pruned graph up to date with the original graph. */
+    private final GraphListener tracker = new Tracker();
 
     public MySearch(Graph graph) {
-        this.gf = pruneGraph(new GraphFacade(graph));
+        this.original = new GraphFacade(graph);
+        this.gf = pruneGraph(this.original).attach();
+        this.gf.getCompactGraph();
+    }
+
+    /** Constructs a search over an already pruned graph, such as one loaded by {@link #load(Path)}. */
+    public MySearch(GraphFacade pruned) {
+        this.original = null;
+        this.gf = pruned.attach();
+        this.gf.getCompactGraph();
+    }
+
+    /**
+     * Subscribes this search to the changes of the original graph. Added and
+     * removed edges are then propagated to the pruned graph and its derived
+     * maps, visiting only the part of the graph that is affected. The graph
+     * should not be changed while a search is running.
+     * @throws IllegalStateException if the search was constructed from a pruned graph
+     */
+    public void attach() {
+        if (this.original == null) {
+            throw new IllegalStateException("Search has no original graph to attach to");
+        }
+        this.original.attach();
+        this.original.getGraph().addListener(this.tracker);
+    }
+
+    /** Unsubscribes this search from the changes of the original graph. */
+    public void detach() {
+        if (this.original != null) {
+            this.original.getGraph().removeListener(this.tracker);
+            this.original.detach();
+        }
+    }
+
+    /** Constructs a search over the pruned graph in a snapshot written by {@link #save(Path)}. */
+    public static MySearch load(Path file) throws IOException {
+        return new MySearch(GraphSnapshot.load(file));
+    }
+
+    /** Writes a snapshot of the pruned graph and its derived maps to a file. */
+    public void save(Path file) throws IOException {
+        GraphSnapshot.save(this.gf, file);
+    }
+
+    /**
+     * Resumes a search from a checkpoint written by
+     * {@link MySearchInstance#checkpoint(Path)}, which must have been taken over
+     * the same graph.
+     */
+    public MySearchInstance resume(Path checkpoint) throws IOException {
+        return SearchCheckpoint.load(this, checkpoint);
     }
 
     public Graph getGraph() {
         return this.gf.getGraph();
     }
 
+    /** Returns the integer-indexed form of the pruned graph. */
+    CompactGraph getCompactGraph() {
+        return this.gf.getCompactGraph();
+    }
+
+    /**
+     * Returns the integer-indexed form of the pruned graph, restricted to the
+     * backward cone of a given product. Cones are cached, so repeated searches
+     * for the same product only compute it once.
+     * @see #restrictToCone(CompactGraph, Node)
+     */
+    CompactGraph getCompactGraph(Node product) {
+        return getCompactGraph(product, EdgeOrdering.DEFAULT);
+    }
+
+    /**
+     * Returns the integer-indexed form of the backward cone of a given product
+     * (see {@link #getCompactGraph(Node)}), with the in-edges in the order of a
+     * given ordering. Cones are cached per product and ordering, except for
+     * adaptive orderings, for which they are constructed anew every time.
+     */
+    CompactGraph getCompactGraph(Node product, EdgeOrdering ordering) {
+        if (ordering.isAdaptive()) {
+            return new CompactGraph(getCompactGraph(product).getFacade(), ordering);
+        }
+        var key = new ConeKey(product, ordering);
+        CompactGraph result;
+        synchronized (this.coneCache) {
+            result = this.coneCache.get(key);
+        }
+        if (result == null) {
+            if (ordering != EdgeOrdering.DEFAULT) {
+                result = new CompactGraph(getCompactGraph(product).getFacade(), ordering);
+            } else {
+                var cg = getCompactGraph();
+                result = restrictToCone(cg, product);
+                if (result == null) {
+                    // the product is not in the graph; searches will find nothing
+                    result = cg;
+                }
+            }
+            synchronized (this.coneCache) {
+                this.coneCache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /** Key of the cone cache. */
+    private record ConeKey(Node product, EdgeOrdering ordering) {
+        // no additional members
+    }
+
     @Override
     public Iterator<Solution> search(String name) {
         return search(new Node(name));
@@ -31,10 +154,131 @@ public class MySearch implements Search {
 
     @Override
     public Iterator<Solution> search(Node product) {
-        return new MySearchInstance(this.gf, product);
+        return new MySearchInstance(getCompactGraph(product), product);
+    }
+
+    /**
+     * Returns an iterator over the solutions of a product that stops when one of
+     * the limits in given options is reached. The status of the returned
+     * instance tells whether the solutions are complete. The in-edges are tried
+     * in the order given by the options.
+     */
+    public MySearchInstance search(Node product, SearchOptions options) {
+        return new MySearchInstance(getCompactGraph(product, options.getOrdering()), product).setOptions(options);
+    }
+
+    /**
+     * Returns an iterator over the solutions of a product with at most a given
+     * size. Branches of the search are pruned as soon as a lower bound on their
+     * size exceeds the maximum.
+     */
+    public Iterator<Solution> searchWithin(Node product, int maxSize) {
+        return new MySearchInstance(new EdgeWeights(getCompactGraph(product)), product, maxSize);
+    }
+
+    /**
+     * Returns an iterator over the solutions of a product whose cost, being the
+     * sum of given (non-negative) edge weights, is at most a given maximum.
+     * Branches of the search are pruned as soon as a lower bound on their cost
+     * exceeds the maximum.
+     */
+    public Iterator<Solution> searchWithin(Node product, int maxCost, ToIntFunction<Edge> weight) {
+        return new MySearchInstance(new EdgeWeights(getCompactGraph(product), weight), product, maxCost);
+    }
+
+    /**
+     * Returns an iterator over the solutions of a product in collapsed form: the
+     * search branches over classes of equivalent in-edges rather than over
+     * individual edges, and every collapsed solution stands for all solutions
+     * obtained by choosing one edge from each of its classes. Together, these
+     * are exactly the solutions returned by {@link #search(Node)}.
+     */
+    public Iterator<CollapsedSolution> searchCollapsed(Node product) {
+        var instance = new MySearchInstance(getCompactGraph(product).getCollapsed(), product);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return instance.hasNext();
+            }
+
+            @Override
+            public CollapsedSolution next() {
+                return new CollapsedSolution(instance.next());
+            }
+        };
+    }
+
+    /**
+     * Counts the solutions of a product by searching the collapsed graph (see
+     * {@link #searchCollapsed(Node)}). The result is the same as that of
+     * {@link #count(Node)}, except for the number of steps.
+     */
+    public SolutionCount countCollapsed(Node product) {
+        var cg = getCompactGraph(product).getCollapsed();
+        var result = new SolutionCount(product);
+        var instance = new MySearchInstance(cg, product);
+        while (instance.hasNext()) {
+            var view = instance.nextView();
+            var count = 1L;
+            for (var i = 0; i < view.size(); i++) {
+                count *= cg.getClassSize(instance.getSolutionEdge(i));
+            }
+            result.addSolutions(view.size(), count);
+        }
+        result.addSteps(instance.getStepCount());
+        return result;
+    }
+
+    @Override
+    public void forEachSolution(Node product, Consumer<? super SolutionView> action) {
+        var instance = new MySearchInstance(getCompactGraph(product), product);
+        while (instance.hasNext()) {
+            action.accept(instance.nextView());
+        }
+    }
+
+    /** Collects all solutions of a product in a compact batch. */
+    public SolutionBatch collect(Node product) {
+        var result = new SolutionBatch(getCompactGraph(product), product);
+        var instance = new MySearchInstance(getCompactGraph(product), product);
+        while (instance.hasNext()) {
+            result.add(instance, instance.nextView());
+        }
+        return result;
     }
 
-    private GraphFacade pruneGraph(GraphFacade gf) {
+    @Override
+    public SolutionCount count(Node product) {
+        return count(product, SearchOptions.NONE);
+    }
+
+    /**
+     * Counts the solutions of a product, until one of the limits in given
+     * options is reached; the status of the result tells whether it is complete.
+     */
+    public SolutionCount count(Node product, SearchOptions options) {
+        var result = new SolutionCount(product);
+        var instance = search(product, options);
+        while (instance.hasNext()) {
+            result.addSolution(instance.nextView().size());
+        }
+        result.addSteps(instance.getStepCount());
+        result.setStatus(instance.getStatus());
+        return result;
+    }
+
+    /** Restricts a graph to the nodes and edges that are reachable from its generators. */
+    static GraphFacade pruneGraph(GraphFacade gf) {
+        var result = prune(gf);
+        log("Result of pruning %s", gf.getName());
+        log("Original graph: %s nodes, %s edges", gf.getNodes().size(), gf.getEdges().size());
+        log("Pruned graph: %s nodes, %s edges", result.getNodes().size(), result.getEdges().size());
+        log("Max depth: %s", result.getNodeDepthMap().values().stream().reduce(0, Integer::max));
+        return result;
+    }
+
+    /** Restricts a graph to the nodes and edges that are reachable from its generators, without logging. */
+    private static GraphFacade prune(GraphFacade gf) {
         var g = new Graph(gf.getName());
         gf.getEdges().stream().filter(e -> e.source().isEmpty()).forEach(g::addEdge);
         g.getEdges().stream().map(Edge::target).forEach(g::addNode);
@@ -53,11 +297,209 @@ public class MySearch implements Search {
                         g.addEdge(e);
             });
         }
-        var result = new GraphFacade(g);
-        log("Result of pruning %s", gf.getName());
-        log("Original graph: %s nodes, %s edges", gf.getNodes().size(), gf.getEdges().size());
-        log("Pruned graph: %s nodes, %s edges", result.getNodes().size(), result.getEdges().size());
-        log("Max depth: %s", result.getNodeDepthMap().values().stream().reduce(0, Integer::max));
-        return result;
+        return new GraphFacade(g);
+    }
+
+    /**
+     * Restricts a compact graph to the backward cone of a product: the nodes and
+     * edges from which the product can be derived. Edges that have the product
+     * among their pre-nodes are left out, as they can never be part of a
+     * solution; the result is pruned again, until this no longer changes it.
+     * The in-edge lists of the result are those of the original graph, minus
+     * the removed edges, so searches over it find the same solutions in the
+     * same order.
+     * @return the compact form of the restricted graph, or {@code null} if the
+     *         product is not in the graph
+     */
+    static CompactGraph restrictToCone(CompactGraph cg, Node product) {
+        var result = cg;
+        var productIx = result.getNodeIx(product);
+        var changed = productIx >= 0;
+        while (changed) {
+            var inCone = new boolean[result.getNodeCount()];
+            var inEdges = new boolean[result.getEdgeCount()];
+            var queue = new int[result.getNodeCount()];
+            var tail = 0;
+            inCone[productIx] = true;
+            queue[tail++] = productIx;
+            for (var head = 0; head < tail; head++) {
+                var n = queue[head];
+                for (var i = 0; i < result.getInEdgeCount(n); i++) {
+                    var e = result.getInEdge(n, i);
+                    if (!hasPre(result, e, productIx)) {
+                        inEdges[e] = true;
+                        for (var j = result.getSourceStart(e); j < result.getSourceEnd(e); j++) {
+                            var s = result.getSource(j);
+                            if (!inCone[s]) {
+                                inCone[s] = true;
+                                queue[tail++] = s;
+                            }
+                        }
+                    }
+                }
+            }
+            var g = new Graph(result.getName());
+            for (var n = 0; n < result.getNodeCount(); n++) {
+                if (inCone[n]) {
+                    g.addNode(result.getNode(n));
+                }
+            }
+            for (var e = 0; e < result.getEdgeCount(); e++) {
+                if (inEdges[e]) {
+                    g.addEdge(result.getEdge(e));
+                }
+            }
+            var pruned = prune(new GraphFacade(g));
+            changed = pruned.getNodes().size() != result.getNodeCount()
+                    || pruned.getEdges().size() != result.getEdgeCount();
+            result = pruned.getCompactGraph();
+            productIx = result.getNodeIx(product);
+            if (productIx < 0) {
+                // the product cannot be derived at all
+                result = null;
+                changed = false;
+            }
+        }
+        return productIx < 0 ? null : result;
+    }
+
+    /** Tests if a given edge has a given node among its pre-nodes. */
+    private static boolean hasPre(CompactGraph cg, int edge, int node) {
+        for (var i = cg.getPreStart(edge); i < cg.getPreEnd(edge); i++) {
+            if (cg.getPre(i) == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Listener to the original graph that updates the pruned graph. Edges are
+     * added to the pruned graph as soon as their sources are in it, after which
+     * the out-edges of newly added targets are considered in turn. When an edge
+     * is removed, only the nodes forwards reachable from its target can become
+     * underivable; those that do are removed, with their edges.
+     */
+    private class Tracker implements GraphListener {
+        @Override
+        public void edgeAdded(Edge edge) {
+            if (isDerivable(edge)) {
+                var fresh = new LinkedList<Node>();
+                addPruned(edge, fresh);
+                while (!fresh.isEmpty()) {
+                    for (var e : MySearch.this.original.getOutEdges(fresh.remove())) {
+                        if (isDerivable(e)) {
+                            addPruned(e, fresh);
+                        }
+                    }
+                }
+                changed();
+            }
+        }
+
+        /** Tests if an edge of the original graph should be added to the pruned graph. */
+        private boolean isDerivable(Edge edge) {
+            var pruned = MySearch.this.gf.getGraph();
+            return !pruned.getEdges().contains(edge) && pruned.getNodes().containsAll(edge.source())
+                    && !edge.source().contains(edge.target());
+        }
+
+        /** Adds an edge, and if necessary its target, to the pruned graph. */
+        private void addPruned(Edge edge, LinkedList<Node> fresh) {
+            var pruned = MySearch.this.gf.getGraph();
+            if (pruned.addNode(edge.target())) {
+                fresh.add(edge.target());
+            }
+            pruned.addEdge(edge);
+        }
+
+        @Override
+        public void edgeRemoved(Edge edge) {
+            var pruned = MySearch.this.gf.getGraph();
+            if (!pruned.removeEdge(edge)) {
+                return;
+            }
+            // the region of nodes that might have become underivable
+            var region = new LinkedHashSet<Node>();
+            var queue = new LinkedList<Node>();
+            region.add(edge.target());
+            queue.add(edge.target());
+            while (!queue.isEmpty()) {
+                for (var e : MySearch.this.gf.getOutEdges(queue.remove())) {
+                    if (region.add(e.target())) {
+                        queue.add(e.target());
+                    }
+                }
+            }
+            // derive what can still be derived in the region, counting for every
+            // edge into it the occurrences of its sources that are not yet derived
+            var missing = new HashMap<Edge, Integer>();
+            var derived = new HashSet<Node>();
+            var fresh = new LinkedList<Node>();
+            for (var node : region) {
+                for (var e : MySearch.this.gf.getAllInEdges(node)) {
+                    var count = (int) e.source().stream().filter(region::contains).count();
+                    missing.put(e, count);
+                    if (count == 0 && derived.add(node)) {
+                        fresh.add(node);
+                    }
+                }
+            }
+            while (!fresh.isEmpty()) {
+                // the out-edges of region nodes lead into the region, and list an edge once per source occurrence
+                for (var e : MySearch.this.gf.getOutEdges(fresh.remove())) {
+                    if (missing.merge(e, -1, Integer::sum) == 0 && derived.add(e.target())) {
+                        fresh.add(e.target());
+                    }
+                }
+            }
+            region.removeAll(derived);
+            region.forEach(this::removePruned);
+            changed();
+        }
+
+        @Override
+        public void nodeRemoved(Node node) {
+            removePruned(node);
+            changed();
+        }
+
+        /**
+         * Removes a node and its incident edges from the pruned graph, finding
+         * the edges through the edge maps of the facade rather than by searching
+         * all edges of the graph.
+         */
+        private void removePruned(Node node) {
+            var gf = MySearch.this.gf;
+            var pruned = gf.getGraph();
+            if (pruned.getNodes().contains(node)) {
+                var incident = gf.getAllInEdges(node);
+                incident.addAll(gf.getOutEdges(node));
+                pruned.removeNode(node, incident);
+            }
+        }
+
+        /** Invalidates the cached cones after a change of the pruned graph. */
+        private void changed() {
+            synchronized (MySearch.this.coneCache) {
+                MySearch.this.coneCache.clear();
+            }
+        }
+    }
+
+    /** Map that keeps a bounded number of entries, evicting the least recently used one. */
+    private static class LruCache<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        LruCache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > this.capacity;
+        }
     }
 }
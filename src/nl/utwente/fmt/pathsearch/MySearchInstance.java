@@ -1,150 +1,812 @@
 package nl.utwente.fmt.pathsearch;
 
-import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Set;
 
 public class MySearchInstance implements Iterator<Solution> {
-    private final GraphFacade gf;
+    private final CompactGraph cg;
 	private final Node product;
-    /** List of nodes already made. */
-    private final Deque<Node> made;
-    /** List of nodes yet to be made. */
-    private final Deque<Node> frontier;
-	/** Mapping from found nodes to their (currently known) downstream nodes. */
-    private final Map<Node, Set<Node>> downstreamMap;
-    /** Mapping from made nodes to the index of their maker. */
-    private final Map<Node, Integer> makerIxMap;
+    /** Number of the product node, or {@code -1} if it is not in the graph. */
+    private final int productIx;
+    /** Stack of nodes already made. */
+    private final int[] made;
+    /** Number of nodes in {@link #made}. */
+    private int madeSize;
+    /** Stack of nodes yet to be made; the top of the stack is the head of the frontier. */
+    private final int[] frontier;
+    /** Number of nodes in {@link #frontier}. */
+    private int frontierSize;
+    /** Number of words in each downstream bitset. */
+    private final int words;
 	/**
-	 * Mapping from producing edges to the downstream delta of their early
-	 * producers.
+	 * Mapping from found nodes to their (currently known) downstream nodes, as
+	 * bitsets over the node numbers. Rows are allocated when a node is first found
+	 * and reused afterwards; the row of a node that is not found is all zeroes.
+	 */
+    private final long[][] downstream;
+    /** Flags indicating which nodes are currently found. */
+    private final boolean[] found;
+    /** Mapping from made nodes to the index of their maker; {@code -1} for other nodes. */
+    private final int[] makerIx;
+    /** Mapping from found nodes to the position in {@link #made} of the node that found them. */
+    private final int[] foundBy;
+    /** Undo trail of the downstream bitsets: nodes of changed words. */
+    private int[] trailNode;
+    /** Undo trail of the downstream bitsets: indices of changed words. */
+    private int[] trailWord;
+    /** Undo trail of the downstream bitsets: old values of changed words. */
+    private long[] trailOld;
+    /** Number of entries on the undo trail. */
+    private int trailSize;
+    /** Size of the undo trail before each made node was added. */
+    private final int[] trailMark;
+    /** The downstream bitset passed on by the current maker. */
+    private final long[] newDownstream;
+    /** Indices of the non-zero words of {@link #newDownstream}. */
+    private final int[] newDownstreamWords;
+    /** Number of entries in {@link #newDownstreamWords}. */
+    private int newDownstreamWordCount;
+    /** Per-node markers of the upstream traversal in {@link #addMaker}. */
+    private final int[] visited;
+    /** Current value of the marker in {@link #visited}. */
+    private int visitMark;
+    /** Work queue of the upstream traversal in {@link #addMaker}. */
+    private final int[] upstream;
+    /**
+     * Number of made nodes whose makers are fixed for this instance; the search
+     * never backtracks below this level.
+     */
+    private int floor;
+    /** Flag indicating that the next search step goes forward, rather than backtracking. */
+    private boolean forward;
+	/**
+	 * Flag indicating that the search has ended, because the search space is
+	 * exhausted or a limit was reached (see {@link #status}).
 	 */
-	private final Map<Edge, Map<Node, Set<Node>>> deltasMap;
-	/** Flag indicating that the search space is exhausted. */
 	private boolean exhausted;
 	/**
 	 * Flag indicating that the next solution has been found but not yet delivered.
 	 */
 	private boolean nextValid;
     /** Counts the number of steps taken during search. */
-    private int stepCount;
-	
-    public MySearchInstance(GraphFacade gf, Node product) {
-        this.gf = gf;
+    private long stepCount;
+    /** View of the current solution. */
+    private final View view = new View();
+    /** Bitset used in {@link #getLowerBound(EdgeWeights)}; allocated on demand. */
+    private long[] bound;
+    /** Weights for the cost bound, or {@code null} if the cost is unbounded. */
+    private EdgeWeights weights;
+    /** Maximal cost of the solutions, if {@link #weights} is set. */
+    private int maxCost;
+    /** Metrics of this instance, or {@code null} if they are not collected. */
+    private Metrics metrics;
+    /** Maximal number of search steps. */
+    private long maxSteps = Long.MAX_VALUE;
+    /** Flag indicating that there is a deadline or a cancellation token to be checked. */
+    private boolean limited;
+    /** Moment at which the search should stop, on the scale of {@link System#nanoTime()}. */
+    private long stopNanos;
+    /** Cancellation token of the search, if any. */
+    private CancellationToken token;
+    /** Status of the search if it was stopped by a limit; {@code null} otherwise. */
+    private SearchStatus status;
+    /** Store of learned nogoods, or {@code null} if nogoods are not learned. */
+    private NogoodStore nogoods;
+    /** Flag set by {@link #addMaker} if the maker gives a frontier node a downstream set including a nogood. */
+    private boolean conflict;
+    /** Nodes of the nogood being learned, as a bitset; all zeroes outside {@link #learn(int)}. */
+    private long[] witnessSet;
+    /** Nodes of the nogood being learned, as a list. */
+    private int[] witnesses;
+    /** Flag indicating that the search backjumps; see {@link #setBackjumping(boolean)}. */
+    private boolean backjumping = true;
+    /**
+     * Levels at which the downstream nodes of a failed node were added to its
+     * downstream set, indexed by node number; only valid within
+     * {@link #getConflictLevel(int)}, for the nodes in {@link #conflictNodes}.
+     */
+    private final int[] conflictLevels;
+    /** Nodes with a valid entry in {@link #conflictLevels}, as a bitset; all zeroes outside {@link #getConflictLevel(int)}. */
+    private final long[] conflictNodes;
+    /**
+     * Level to which the search backjumps after the last failed call of
+     * {@link #nextStep}, or {@link #NO_JUMP} if it backtracks chronologically.
+     */
+    private int jumpLevel = NO_JUMP;
+    /** Ordering to be notified of the solutions, or {@code null} if there is none. */
+    private EdgeOrdering ordering;
+
+    public MySearchInstance(CompactGraph cg, Node product) {
+        this.cg = cg;
 		this.product = product;
-        this.made = new LinkedList<>();
-        this.frontier = new LinkedList<>();
-        this.makerIxMap = new HashMap<>();
-        this.downstreamMap = new HashMap<>();
-		this.deltasMap = new HashMap<>();
-        this.frontier.add(product);
-        this.downstreamMap.put(product, Collections.emptySet());
-        this.exhausted = !gf.getNodes().contains(product);
+        this.productIx = cg.getNodeIx(product);
+        var nodeCount = cg.getNodeCount();
+        this.made = new int[nodeCount];
+        this.frontier = new int[nodeCount];
+        this.words = (nodeCount + 63) >>> 6;
+        this.downstream = new long[nodeCount][];
+        this.found = new boolean[nodeCount];
+        this.makerIx = new int[nodeCount];
+        Arrays.fill(this.makerIx, -1);
+        this.foundBy = new int[nodeCount];
+        this.trailNode = new int[64];
+        this.trailWord = new int[64];
+        this.trailOld = new long[64];
+        this.trailMark = new int[nodeCount];
+        this.newDownstream = new long[this.words];
+        this.newDownstreamWords = new int[this.words];
+        this.visited = new int[nodeCount];
+        this.upstream = new int[nodeCount];
+        this.conflictLevels = new int[nodeCount];
+        this.conflictNodes = new long[this.words];
+        this.exhausted = this.productIx < 0;
+        if (!this.exhausted) {
+            push(this.productIx);
+            setFound(this.productIx, -1);
+        }
 		this.nextValid = false;
+        this.forward = true;
+        if (new SolutionFoundEvent().isEnabled() || new SearchCompletedEvent().isEnabled()) {
+            this.metrics = new Metrics();
+        }
 	}
 
+    /**
+     * Constructs a search instance for the part of the search space of a given
+     * product that starts with a given sequence of maker choices. The makers
+     * chosen in the prefix are fixed; the maker of the next node is chosen among
+     * the in-edges from a given index onwards.
+     * @param prefix maker indices of the first made nodes, which must be feasible
+     * @param from lowest maker index for the node after the prefix
+     */
+    MySearchInstance(CompactGraph cg, Node product, int[] prefix, int from) {
+        this(cg, product);
+        if (!this.exhausted) {
+            for (var makerIx : prefix) {
+                addMaker(pop(), makerIx);
+            }
+            this.floor = prefix.length;
+            this.forward = this.frontierSize > 0 && nextStep(pop(), from);
+            if (this.forward) {
+                this.nextValid = this.frontierSize == 0;
+            } else {
+                this.exhausted = true;
+            }
+        }
+    }
+
+    /**
+     * Constructs a search instance that only returns solutions whose cost under
+     * given edge weights is at most a given maximum. Branches are pruned as soon
+     * as a lower bound on their cost exceeds the maximum.
+     */
+    MySearchInstance(EdgeWeights weights, Node product, int maxCost) {
+        this(weights.getCompactGraph(), product);
+        this.weights = weights;
+        this.maxCost = maxCost;
+        if (!this.exhausted && getLowerBound(weights) > maxCost) {
+            this.exhausted = true;
+        }
+    }
+
 	public Graph getGraph() {
-        return this.gf.getGraph();
+        return this.cg.getGraph();
 	}
 
 	public Node getProduct() {
 		return this.product;
 	}
 
-    public int getStepCount() {
+    public long getStepCount() {
         return this.stepCount;
     }
-	
+
+    /**
+     * Starts collecting metrics for this instance, if this is not already done,
+     * and returns them. Metrics are collected from this point onwards.
+     */
+    public SearchMetrics enableMetrics() {
+        if (this.metrics == null) {
+            this.metrics = new Metrics();
+        }
+        return this.metrics;
+    }
+
+    /** Returns the metrics of this instance, or {@code null} if they are not collected. */
+    public SearchMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the limits of this search. Timeouts count from the moment of this
+     * call. When a limit is reached, the search stops as if the search space
+     * were exhausted, and its status tells which limit it was; setting new
+     * limits then lets the search continue where it stopped. The ordering in
+     * the options is notified of the solutions, but does not change the order
+     * of the in-edges, which is fixed by the compact graph of this instance.
+     */
+    public MySearchInstance setOptions(SearchOptions options) {
+        this.maxSteps = options.getMaxSteps();
+        this.stopNanos = options.getStopNanos();
+        this.token = options.getCancellation();
+        this.limited = this.stopNanos != Long.MAX_VALUE || this.token != null;
+        if (options.getNogoodCapacity() > 0 && this.nogoods == null) {
+            enableNogoods(options.getNogoodCapacity());
+        }
+        setBackjumping(options.isBackjumping());
+        this.ordering = options.getOrdering() == EdgeOrdering.DEFAULT ? null : options.getOrdering();
+        if (this.status != null) {
+            this.status = null;
+            this.exhausted = false;
+        }
+        return this;
+    }
+
+    /**
+     * Starts learning nogoods: whenever a node turns out to have no feasible
+     * maker because each of its in-edges has a pre-node in the node's downstream
+     * set, a set of such pre-nodes is recorded. From then on, maker choices that
+     * would give the node a downstream set including this nogood are skipped,
+     * since they lead to the same dead end. This only prunes branches without
+     * solutions, so the solutions are the same, but the number of steps may
+     * decrease.
+     * @param capacity maximal number of node numbers stored in all nogoods together
+     */
+    public MySearchInstance enableNogoods(int capacity) {
+        var nodeCount = this.cg.getNodeCount();
+        this.nogoods = new NogoodStore(nodeCount, capacity);
+        this.witnessSet = new long[this.words];
+        this.witnesses = new int[nodeCount];
+        return this;
+    }
+
+    /**
+     * Sets whether the search backjumps, which it does by default, rather than
+     * backtracking chronologically. When none of the in-edges of a node just
+     * taken from the frontier is feasible, this is caused by the node having
+     * been found, and by a pre-node of every in-edge having been added to its
+     * downstream set. A backjumping search then returns straight to the deepest
+     * level responsible for one of these causes: the choices for the levels in
+     * between cannot remove the conflict, so the branches they lead to have no
+     * solutions. The solutions are therefore the same, and are returned in the
+     * same order, but the number of steps may decrease.
+     */
+    public MySearchInstance setBackjumping(boolean backjumping) {
+        this.backjumping = backjumping;
+        if (!backjumping) {
+            this.jumpLevel = NO_JUMP;
+        }
+        return this;
+    }
+
+    /** Indicates whether the search backjumps rather than backtracking chronologically. */
+    public boolean isBackjumping() {
+        return this.backjumping;
+    }
+
+    /** Returns the store of learned nogoods, or {@code null} if nogoods are not learned. */
+    NogoodStore getNogoods() {
+        return this.nogoods;
+    }
+
+    /** Writes a checkpoint of the state of this search to a file, from which it can be resumed. */
+    public void checkpoint(Path file) throws IOException {
+        SearchCheckpoint.save(this, file);
+    }
+
+    CompactGraph getCompactGraph() {
+        return this.cg;
+    }
+
+    /** Returns the maker indices of the made nodes, in the order in which they were made. */
+    int[] getPrefix() {
+        var result = new int[this.madeSize];
+        for (var i = 0; i < this.madeSize; i++) {
+            result[i] = this.makerIx[this.made[i]];
+        }
+        return result;
+    }
+
+    /** Returns the number of made nodes whose makers are fixed. */
+    int getFloor() {
+        return this.floor;
+    }
+
+    /** Indicates whether the next search step goes forward, rather than backtracking. */
+    boolean isForward() {
+        return this.forward;
+    }
+
+    /** Indicates whether the current state is a solution that has not yet been delivered. */
+    boolean isNextValid() {
+        return this.nextValid;
+    }
+
+    /** Indicates whether the cost of the solutions is bounded. */
+    boolean isBounded() {
+        return this.weights != null;
+    }
+
+    /**
+     * Restores a saved state in this fresh instance, by making the nodes in the
+     * order of a given sequence of maker choices.
+     * @param complete flag indicating that the search space of the saved state was exhausted
+     * @throws IllegalArgumentException if a maker index is out of range or infeasible
+     */
+    void restore(int[] prefix, int floor, boolean forward, boolean nextValid, boolean complete, long stepCount) {
+        this.stepCount = stepCount;
+        if (complete) {
+            this.exhausted = true;
+            return;
+        }
+        if (this.exhausted) {
+            throw new IllegalArgumentException(String.format("Product %s is not in graph %s", this.product, this.cg.getName()));
+        }
+        for (var makerIx : prefix) {
+            var head = getHead();
+            if (head < 0 || makerIx < 0 || makerIx >= this.cg.getInEdgeCount(head) || !isFeasible(makerIx)) {
+                throw new IllegalArgumentException(String.format("Invalid maker choice %s for node %s", makerIx,
+                        head < 0 ? null : this.cg.getNode(head)));
+            }
+            addMaker(pop(), makerIx);
+        }
+        if (floor < 0 || floor > prefix.length || nextValid && (!forward || this.frontierSize > 0)) {
+            throw new IllegalArgumentException("Inconsistent search state");
+        }
+        this.floor = floor;
+        this.forward = forward;
+        this.nextValid = nextValid;
+    }
+
+    /** Indicates whether the search space is exhausted, as opposed to the search being stopped by a limit. */
+    boolean isComplete() {
+        return this.exhausted && this.status == null;
+    }
+
+    /** Returns the status of this search. */
+    public SearchStatus getStatus() {
+        if (!this.exhausted) {
+            return SearchStatus.RUNNING;
+        }
+        return this.status == null ? SearchStatus.COMPLETE : this.status;
+    }
+
+    /** Indicates whether the search space is known to be exhausted. */
+    boolean isExhausted() {
+        return this.exhausted;
+    }
+
 	@Override
 	public boolean hasNext() {
 		if (!this.exhausted && !this.nextValid) {
-			findNext();
+			findNext(Integer.MAX_VALUE);
 		}
         return !this.exhausted;
 	}
 
 	@Override
 	public Solution next() {
+        return nextView().toSolution();
+	}
+
+    /**
+     * Returns the next solution as a view on the state of this instance, which is
+     * only valid until the search continues.
+     */
+    SolutionView nextView() {
 		if (!hasNext()) {
 			throw new NoSuchElementException();
 		}
-		var result = computeSolution();
 		this.nextValid = false;
-		return result;
-	}
+        // the search continues by backtracking
+        this.forward = false;
+        this.exhausted = this.madeSize == this.floor;
+        if (this.exhausted && this.metrics != null) {
+            this.metrics.completed();
+        }
+        if (this.ordering != null) {
+            this.ordering.solutionFound(this.view);
+        }
+        return this.view;
+    }
 
-	private Solution computeSolution() {
-        var result = new Solution(getGraph(), getProduct());
-        this.made.stream().map(this::getMaker).forEach(result::add);
+	Solution computeSolution() {
+        var result = new Solution(this.cg, getProduct(), getSolutionEdges());
         result.setStepCount(getStepCount());
 		return result;
 	}
 
-	private void findNext() {
-		assert !this.nextValid;
-        var forward = !this.frontier.isEmpty();
-		while (!this.exhausted && !this.nextValid) {
-			if (forward) {
-				forward = nextNode();
+    /**
+     * Takes search steps until the next solution is found, the search space is
+     * exhausted, or a given number of steps has been taken.
+     * @return {@code true} if the search stopped because a solution was found or
+     *         the search space is exhausted
+     */
+	boolean findNext(int maxSteps) {
+        var start = this.metrics == null ? 0 : System.nanoTime();
+        var steps = 0;
+		while (!this.exhausted && !this.nextValid && steps < maxSteps) {
+            if (this.stepCount >= this.maxSteps) {
+                stop(SearchStatus.STEP_LIMIT_REACHED);
+                break;
+            }
+            if (this.limited && steps % LIMIT_CHECK_INTERVAL == 0 && checkLimits()) {
+                break;
+            }
+			if (this.forward) {
+				this.forward = nextNode();
 			} else {
-                forward = nextMaker();
+                this.forward = nextMaker();
+                if (this.metrics != null) {
+                    this.metrics.backtracks++;
+                }
 			}
             log();
-			if (forward) {
-                this.nextValid = this.frontier.isEmpty();
+			if (this.forward) {
+                this.nextValid = this.frontierSize == 0;
 			} else {
-                this.exhausted = this.made.isEmpty();
+                this.exhausted = this.madeSize == this.floor;
 			}
+            if (this.metrics != null) {
+                this.metrics.step();
+            }
+            steps++;
 		}
+        if (this.metrics != null && steps > 0) {
+            this.metrics.searched(System.nanoTime() - start);
+        }
+        return this.exhausted || this.nextValid;
 	}
 
+    /** Number of search steps between checks of the deadline and the cancellation token. */
+    private static final int LIMIT_CHECK_INTERVAL = 256;
+
+    /**
+     * Checks the deadline and the cancellation token, and stops the search if
+     * either calls for it.
+     * @return {@code true} if the search was stopped
+     */
+    private boolean checkLimits() {
+        if (this.token != null && this.token.isCancelled()) {
+            stop(SearchStatus.CANCELLED);
+        } else if (System.nanoTime() >= this.stopNanos) {
+            stop(SearchStatus.DEADLINE_EXCEEDED);
+        }
+        return this.exhausted;
+    }
+
+    /** Stops the search because of a given limit. */
+    private void stop(SearchStatus status) {
+        this.status = status;
+        this.exhausted = true;
+    }
+
+    /**
+     * Splits off part of the remaining search space into a new instance. The new
+     * instance gets the untried makers of the lowest made node that is not yet
+     * fixed and has any; in this instance, the current maker of that node (and
+     * those of the nodes below it) become fixed.
+     * @return the new instance, or {@code null} if there are no untried makers
+     *         to split off
+     */
+    MySearchInstance split() {
+        MySearchInstance result = null;
+        while (result == null && !this.exhausted && this.madeSize > this.floor) {
+            var node = this.made[this.floor];
+            var from = this.makerIx[node] + 1;
+            if (from < this.cg.getInEdgeCount(node)) {
+                var prefix = new int[this.floor];
+                for (var i = 0; i < this.floor; i++) {
+                    prefix[i] = this.makerIx[this.made[i]];
+                }
+                result = new MySearchInstance(this.cg, this.product, prefix, from);
+            }
+            this.floor++;
+            if (!this.forward && !this.nextValid) {
+                this.exhausted = this.madeSize == this.floor;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of made nodes. */
+    int getMadeSize() {
+        return this.madeSize;
+    }
+
+    /** Returns the node at the head of the frontier, or {@code -1} if the frontier is empty. */
+    int getHead() {
+        return this.frontierSize == 0 ? -1 : this.frontier[this.frontierSize - 1];
+    }
+
+    /** Tests if a given in-edge of the head of the frontier can be its maker. */
+    boolean isFeasible(int makerIx) {
+        var head = getHead();
+        return !intersects(this.cg.getInEdge(head, makerIx), this.downstream[head]);
+    }
+
+    /** Makes the head of the frontier, using a given (feasible) in-edge as maker. */
+    void make(int makerIx) {
+        addMaker(pop(), makerIx);
+        this.stepCount++;
+        if (this.metrics != null) {
+            this.metrics.step();
+        }
+    }
+
+    /** Undoes the last call of {@link #make(int)}. */
+    void unmake() {
+        this.madeSize--;
+        var last = this.made[this.madeSize];
+        var makerIx = this.makerIx[last];
+        this.makerIx[last] = -1;
+        removeMaker(this.cg.getInEdge(last, makerIx));
+        push(last);
+    }
+
+    /**
+     * Brings this instance to the state reached by a given sequence of maker
+     * choices, undoing only the makers that are not shared with the current state.
+     */
+    void replay(int[] prefix) {
+        var common = 0;
+        while (common < this.madeSize && common < prefix.length
+                && this.makerIx[this.made[common]] == prefix[common]) {
+            common++;
+        }
+        while (this.madeSize > common) {
+            unmake();
+        }
+        for (var i = common; i < prefix.length; i++) {
+            make(prefix[i]);
+        }
+    }
+
+    /**
+     * Returns a lower bound on the cost of every solution that extends the
+     * current state, under given edge weights. Two bounds are combined. Every
+     * solution contains the makers of the made nodes, and some maker for every
+     * other found node and pre-node of a found node. Moreover, for every node in
+     * the frontier, a solution contains the makers of its downstream nodes, and
+     * a derivation of the node itself, which costs at least its weighted depth.
+     * The bound saturates at {@link Integer#MAX_VALUE}.
+     */
+    int getLowerBound(EdgeWeights weights) {
+        if (this.bound == null) {
+            this.bound = new long[this.words];
+        } else {
+            Arrays.fill(this.bound, 0);
+        }
+        var madeCost = 0L;
+        var result = 0L;
+        for (var i = 0; i < this.madeSize + this.frontierSize; i++) {
+            var n = i < this.madeSize ? this.made[i] : this.frontier[i - this.madeSize];
+            this.bound[n >>> 6] |= 1L << n;
+            for (var j = this.cg.getNodePreStart(n); j < this.cg.getNodePreEnd(n); j++) {
+                var p = this.cg.getNodePre(j);
+                this.bound[p >>> 6] |= 1L << p;
+            }
+            if (i < this.madeSize) {
+                madeCost += weights.getWeight(getMaker(n));
+            } else {
+                var chain = (long) weights.getDepth(n) + getDownstreamCost(n, weights);
+                result = Math.max(result, chain);
+            }
+        }
+        // the cost of the found and pre-nodes that are not yet made
+        var closure = madeCost;
+        for (var w = 0; w < this.words; w++) {
+            var bits = this.bound[w];
+            while (bits != 0) {
+                var n = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (!isMade(n)) {
+                    closure += weights.getMinInWeight(n);
+                }
+            }
+        }
+        return (int) Math.min(Math.max(result, closure), Integer.MAX_VALUE);
+    }
+
+    /** Returns the summed weight of the makers of the downstream nodes of a given node. */
+    private long getDownstreamCost(int node, EdgeWeights weights) {
+        var result = 0L;
+        var downstream = this.downstream[node];
+        for (var w = 0; w < this.words; w++) {
+            if (weights.isUnit()) {
+                result += Long.bitCount(downstream[w]);
+            } else {
+                var bits = downstream[w];
+                while (bits != 0) {
+                    var n = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    result += weights.getWeight(getMaker(n));
+                }
+            }
+        }
+        return result;
+    }
+
 	/** Find a production for the next found, unproduced node. */
 	private boolean nextNode() {
-        var next = this.frontier.poll();
-		return nextStep(next, 0);
+        var next = pop();
+		var result = nextStep(next, 0);
+        if (!result && this.jumpLevel != NO_JUMP) {
+            backjump(this.jumpLevel);
+        }
+        return result;
 	}
 
+    /** Value of {@link #jumpLevel} indicating that there is no backjump. */
+    private static final int NO_JUMP = Integer.MAX_VALUE;
+
+    /**
+     * Undoes the makers of the made nodes above a given level, so that the next
+     * call of {@link #nextMaker()} tries the next maker of the node at that level.
+     * The search never backjumps below the floor; if the level is below it, the
+     * remaining search space of this instance is exhausted.
+     */
+    private void backjump(int level) {
+        while (this.madeSize > level + 1 && this.madeSize > this.floor) {
+            unmake();
+        }
+    }
+
 	/** Find the next production for the most recently produced node. */
     private boolean nextMaker() {
-        var next = this.made.removeLast();
-        var makerIx = this.makerIxMap.remove(next);
-        removeMaker(getInEdge(next, makerIx));
+        this.madeSize--;
+        var next = this.made[this.madeSize];
+        var makerIx = this.makerIx[next];
+        this.makerIx[next] = -1;
+        removeMaker(this.cg.getInEdge(next, makerIx));
         return nextStep(next, makerIx + 1);
 	}
 
-	private boolean nextStep(Node next, int from) {
+	private boolean nextStep(int next, int from) {
 		var success = false;
-		var inEdges = getInEdges(next);
-        var downstream = this.downstreamMap.get(next);
+        var inEdgeCount = this.cg.getInEdgeCount(next);
+        var downstream = this.downstream[next];
         var makerIx = from;
-        while (!success && makerIx < inEdges.size()) {
-            var e = inEdges.get(makerIx);
-            if (this.gf.getPre(e).stream().anyMatch(downstream::contains)) {
+        var tentative = this.weights != null || this.nogoods != null;
+        // flag indicating that a feasible maker was rejected
+        var rejected = false;
+        while (!success && makerIx < inEdgeCount) {
+            if (intersects(this.cg.getInEdge(next, makerIx), downstream)) {
                 makerIx++;
+            } else if (!tentative) {
+                success = true;
 			} else {
-				success = true;
+                // the maker is feasible, but may make the cost bound exceed the maximum
+                // or lead to a node with a nogood
+                addMaker(next, makerIx);
+                success = !this.conflict && (this.weights == null || getLowerBound(this.weights) <= this.maxCost);
+                if (!success) {
+                    this.madeSize--;
+                    this.makerIx[next] = -1;
+                    removeMaker(this.cg.getInEdge(next, makerIx));
+                    makerIx++;
+                    rejected = true;
+                }
 			}
 		}
-		if (success) {
+        this.jumpLevel = NO_JUMP;
+		if (!success) {
+            if (from == 0 && !rejected && this.nogoods != null) {
+                learn(next);
+            }
+            if (from == 0 && !rejected && this.backjumping) {
+                this.jumpLevel = getConflictLevel(next);
+            }
+            push(next);
+        } else if (!tentative) {
             addMaker(next, makerIx);
-        } else {
-            this.frontier.push(next);
 		}
         this.stepCount++;
 		return success;
 	}
 
+    /**
+     * Records a nogood for a node none of whose in-edges is feasible, consisting
+     * of one pre-node of each in-edge that lies downstream of the node. Pre-nodes
+     * already chosen for other in-edges are preferred, to keep the nogood small.
+     */
+    private void learn(int node) {
+        var downstream = this.downstream[node];
+        var count = 0;
+        for (var i = 0; i < this.cg.getInEdgeCount(node); i++) {
+            var edge = this.cg.getInEdge(node, i);
+            var witness = -1;
+            for (var j = this.cg.getPreStart(edge); j < this.cg.getPreEnd(edge); j++) {
+                var n = this.cg.getPre(j);
+                if ((this.witnessSet[n >>> 6] & (1L << n)) != 0) {
+                    witness = -1;
+                    break;
+                }
+                if (witness < 0 && (downstream[n >>> 6] & (1L << n)) != 0) {
+                    witness = n;
+                }
+            }
+            if (witness >= 0) {
+                this.witnessSet[witness >>> 6] |= 1L << witness;
+                this.witnesses[count] = witness;
+                count++;
+            }
+        }
+        this.nogoods.add(node, Arrays.copyOf(this.witnesses, count), this.witnessSet);
+        for (var i = 0; i < count; i++) {
+            var n = this.witnesses[i];
+            this.witnessSet[n >>> 6] = 0;
+        }
+    }
+
+    /**
+     * Returns the deepest level responsible for a node none of whose in-edges is
+     * feasible. This is the level of the node that found it, or the level at
+     * which a pre-node of one of its in-edges was added to its downstream set,
+     * whichever is deeper; for every in-edge, the pre-node added earliest counts.
+     * The choices below that level are the same for every level above it, and
+     * are enough to make the node fail again.
+     * <p>
+     * The downstream set of a node only grows after the node is found, and every
+     * addition is on the trail; so the levels are recovered from the trail entries
+     * above the level that found the node. Nodes added at that level or before it
+     * do not affect the result.
+     */
+    private int getConflictLevel(int node) {
+        var downstream = this.downstream[node];
+        var result = this.foundBy[node];
+        // scan the trail backwards; the first entry for a word without a given bit
+        // is the one that added it
+        var level = this.madeSize - 1;
+        var bottom = result + 1 < this.madeSize ? this.trailMark[result + 1] : this.trailSize;
+        for (var t = this.trailSize - 1; t >= bottom; t--) {
+            while (this.trailMark[level] > t) {
+                level--;
+            }
+            if (this.trailNode[t] == node) {
+                var w = this.trailWord[t];
+                var added = downstream[w] & ~this.trailOld[t] & ~this.conflictNodes[w];
+                this.conflictNodes[w] |= added;
+                while (added != 0) {
+                    this.conflictLevels[(w << 6) + Long.numberOfTrailingZeros(added)] = level;
+                    added &= added - 1;
+                }
+            }
+        }
+        for (var i = 0; i < this.cg.getInEdgeCount(node); i++) {
+            var edge = this.cg.getInEdge(node, i);
+            var edgeLevel = Integer.MAX_VALUE;
+            for (var j = this.cg.getPreStart(edge); j < this.cg.getPreEnd(edge); j++) {
+                var n = this.cg.getPre(j);
+                if ((downstream[n >>> 6] & (1L << n)) != 0) {
+                    var bit = this.conflictNodes[n >>> 6] & (1L << n);
+                    edgeLevel = Math.min(edgeLevel, bit == 0 ? result : this.conflictLevels[n]);
+                }
+            }
+            result = Math.max(result, edgeLevel);
+        }
+        Arrays.fill(this.conflictNodes, 0);
+        return result;
+    }
+
+    /**
+     * Tests if the pre-nodes of a given edge intersect a given downstream bitset,
+     * word by word.
+     */
+    private boolean intersects(int edge, long[] nodes) {
+        for (var i = this.cg.getPreWordStart(edge); i < this.cg.getPreWordEnd(edge); i++) {
+            if ((nodes[this.cg.getPreWord(i)] & this.cg.getPreMask(i)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 	/**
 	 * Adds the source nodes of a given edge to the found nodes, and sets or updates
 	 * the upstream nodes.
@@ -153,105 +815,332 @@ public class MySearchInstance implements Iterator<Solution> {
      * @param made
      * @param makerIx
      */
-    private void addMaker(Node made, int makerIx) {
-        this.made.add(made);
-        this.makerIxMap.put(made, makerIx);
-        var maker = getInEdge(made, makerIx);
-        var makerDeltas = new HashMap<Node, Set<Node>>();
-        this.deltasMap.put(maker, makerDeltas);
+    private void addMaker(int made, int makerIx) {
+        var level = this.madeSize;
+        this.conflict = false;
+        this.made[level] = made;
+        this.madeSize++;
+        this.makerIx[made] = makerIx;
+        this.trailMark[level] = this.trailSize;
+        var maker = this.cg.getInEdge(made, makerIx);
+        this.visitMark++;
         // compute the resulting (additional) downstream
-        var newDownstream = new ArrayList<>(this.downstreamMap.get(made));
-        newDownstream.add(made);
-        var uniqueSource = new HashSet<Node>();
-        for (var pred : maker.source()) {
-            if (!uniqueSource.add(pred)) {
-                // this is a duplicate source; do nothing
-                continue;
+        System.arraycopy(this.downstream[made], 0, this.newDownstream, 0, this.words);
+        this.newDownstream[made >>> 6] |= 1L << made;
+        this.newDownstreamWordCount = 0;
+        for (var w = 0; w < this.words; w++) {
+            if (this.newDownstream[w] != 0) {
+                this.newDownstreamWords[this.newDownstreamWordCount] = w;
+                this.newDownstreamWordCount++;
             }
-            if (this.downstreamMap.containsKey(pred)) {
+        }
+        for (var i = this.cg.getSourceStart(maker); i < this.cg.getSourceEnd(maker); i++) {
+            var pred = this.cg.getSource(i);
+            if (this.found[pred]) {
                 // this is a previously found node
                 // add the new downstream to it and all its upstream
-                var upstream = new LinkedList<Node>();
-                upstream.add(pred);
-                while (!upstream.isEmpty()) {
-                    var next = upstream.remove();
-                    if (makerDeltas.containsKey(next)) {
-                        continue;
-                    }
-                    var nextDelta = new HashSet<Node>();
-                    makerDeltas.put(next, nextDelta);
-                    var oldDownstream = this.downstreamMap.get(next);
-                    newDownstream.stream().filter(oldDownstream::add).forEach(nextDelta::add);
+                if (this.visited[pred] == this.visitMark) {
+                    continue;
+                }
+                this.visited[pred] = this.visitMark;
+                var head = 0;
+                var tail = 0;
+                this.upstream[tail++] = pred;
+                while (head < tail) {
+                    var next = this.upstream[head++];
+                    addDownstream(next);
                     if (isMade(next)) {
-                        upstream.addAll(getMaker(next).source());
+                        var nextMaker = getMaker(next);
+                        for (var j = this.cg.getSourceStart(nextMaker); j < this.cg.getSourceEnd(nextMaker); j++) {
+                            var source = this.cg.getSource(j);
+                            if (this.visited[source] != this.visitMark) {
+                                this.visited[source] = this.visitMark;
+                                this.upstream[tail++] = source;
+                            }
+                        }
                     }
                 }
             } else {
                 // this is a newly found node
-                this.frontier.push(pred);
-                this.downstreamMap.put(pred, new HashSet<>(newDownstream));
+                push(pred);
+                setFound(pred, level);
+                addDownstream(pred);
             }
         }
+        if (this.metrics != null) {
+            this.metrics.delta(this.trailSize - this.trailMark[level]);
+        }
     }
 
-    private void removeMaker(Edge maker) {
+    private void removeMaker(int maker) {
+        var level = this.madeSize;
         // Iterate over the maker's source nodes in reverse order
-        var predIter = maker.source().listIterator(maker.source().size());
-        var delta = this.deltasMap.remove(maker);
-        var uniqueSource = new HashSet<Node>();
-		while (predIter.hasPrevious()) {
-			var pred = predIter.previous();
-            if (!uniqueSource.add(pred)) {
-                // this is a duplicate source; do nothing
-                continue;
-            }
-            if (!delta.containsKey(pred)) {
+        for (var i = this.cg.getSourceEnd(maker) - 1; i >= this.cg.getSourceStart(maker); i--) {
+            var pred = this.cg.getSource(i);
+            if (this.foundBy[pred] == level) {
                 // this predecessor was found later; it must be at the head of the frontier
-                assert pred == this.frontier.peek() || saveAsDot(maker)
-                        : String.format("Source %s of %s is not at front of %s", pred, maker, this.frontier);
-                this.frontier.remove();
-                this.downstreamMap.remove(pred);
+                assert pred == this.frontier[this.frontierSize - 1] || saveAsDot(this.cg.getEdge(maker))
+                        : String.format("Source %s of %s is not at front of %s", this.cg.getNode(pred),
+                                this.cg.getEdge(maker), this.cg.getNode(this.frontier[this.frontierSize - 1]));
+                pop();
+                this.found[pred] = false;
 			}
 		}
-		// restore the downstream of the early predecessors
-        delta.entrySet().stream().forEach(e -> this.downstreamMap.get(e.getKey()).removeAll(e.getValue()));
+		// restore the downstream of all predecessors
+        var mark = this.trailMark[level];
+        while (this.trailSize > mark) {
+            this.trailSize--;
+            this.downstream[this.trailNode[this.trailSize]][this.trailWord[this.trailSize]] = this.trailOld[this.trailSize];
+        }
 	}
-	
-    private boolean isMade(Node n) {
-        return this.makerIxMap.containsKey(n);
+
+    /** Marks a node as found, allocating its downstream bitset if necessary. */
+    private void setFound(int node, int foundBy) {
+        this.found[node] = true;
+        this.foundBy[node] = foundBy;
+        if (this.downstream[node] == null) {
+            this.downstream[node] = new long[this.words];
+        }
     }
 
-    private int getMakerIx(Node n) {
-        return this.makerIxMap.get(n);
+    /**
+     * Adds {@link #newDownstream} to the downstream bitset of a given node,
+     * recording the changes on the trail. If the node is in the frontier and its
+     * new downstream set includes one of its nogoods, {@link #conflict} is set.
+     */
+    private void addDownstream(int node) {
+        var row = this.downstream[node];
+        var changed = false;
+        for (var i = 0; i < this.newDownstreamWordCount; i++) {
+            var w = this.newDownstreamWords[i];
+            var old = row[w];
+            var value = old | this.newDownstream[w];
+            if (value != old) {
+                if (this.trailSize == this.trailOld.length) {
+                    this.trailNode = Arrays.copyOf(this.trailNode, 2 * this.trailSize);
+                    this.trailWord = Arrays.copyOf(this.trailWord, 2 * this.trailSize);
+                    this.trailOld = Arrays.copyOf(this.trailOld, 2 * this.trailSize);
+                }
+                this.trailNode[this.trailSize] = node;
+                this.trailWord[this.trailSize] = w;
+                this.trailOld[this.trailSize] = old;
+                this.trailSize++;
+                row[w] = value;
+                changed = true;
+            }
+        }
+        if (changed && this.nogoods != null && !this.conflict && !isMade(node) && this.nogoods.covers(node, row)) {
+            this.conflict = true;
+        }
     }
 
-    private Edge getMaker(Node n) {
-        return getInEdge(n, getMakerIx(n));
+    private void push(int node) {
+        this.frontier[this.frontierSize] = node;
+        this.frontierSize++;
     }
 
-    private Edge getInEdge(Node n, int i) {
-        return getInEdges(n).get(i);
+    private int pop() {
+        this.frontierSize--;
+        return this.frontier[this.frontierSize];
+    }
+
+    private boolean isMade(int n) {
+        return this.makerIx[n] >= 0;
+    }
+
+    /** Returns the number of the maker edge of a made node. */
+    private int getMaker(int n) {
+        return this.cg.getInEdge(n, this.makerIx[n]);
+    }
+
+    /** Returns the number of the maker of the {@code i}th made node. */
+    int getSolutionEdge(int i) {
+        return getMaker(this.made[i]);
+    }
+
+    /** Returns the numbers of the makers of the made nodes. */
+    private int[] getSolutionEdges() {
+        var result = new int[this.madeSize];
+        for (var i = 0; i < this.madeSize; i++) {
+            result[i] = getMaker(this.made[i]);
+        }
+        return result;
+    }
+
+    /** View of the made nodes and their makers as a solution. */
+    private class View implements SolutionView {
+        @Override
+        public Node getProduct() {
+            return MySearchInstance.this.product;
+        }
+
+        @Override
+        public int size() {
+            return MySearchInstance.this.madeSize;
+        }
+
+        @Override
+        public Edge getEdge(int i) {
+            return MySearchInstance.this.cg.getEdge(getMaker(MySearchInstance.this.made[i]));
+        }
+
+        @Override
+        public long getStepCount() {
+            return MySearchInstance.this.stepCount;
+        }
+
+        @Override
+        public Solution toSolution() {
+            return computeSolution();
+        }
+    }
+
+    /** Metrics of this instance, which are also reported as JFR events. */
+    private class Metrics implements SearchMetrics {
+        private long backtracks;
+        private int maxMadeSize;
+        private int maxFrontierSize;
+        private long deltaCount;
+        private int maxDeltaSize;
+        private long solutionCount;
+        private long searchNanos;
+        private long maxSolutionNanos;
+        /** Search time since the last solution. */
+        private long solutionNanos;
+        /** Step count at the last solution. */
+        private long solutionSteps;
+        /** Backtrack count at the last solution. */
+        private long solutionBacktracks;
+        /** Flag indicating that the completion of the search has been reported. */
+        private boolean completed;
+
+        /** Records the sizes of the made stack and the frontier after a search step. */
+        void step() {
+            this.maxMadeSize = Math.max(this.maxMadeSize, MySearchInstance.this.madeSize);
+            this.maxFrontierSize = Math.max(this.maxFrontierSize, MySearchInstance.this.frontierSize);
+        }
+
+        /** Records the size of the downstream delta of a maker. */
+        void delta(int size) {
+            this.deltaCount += size;
+            this.maxDeltaSize = Math.max(this.maxDeltaSize, size);
+        }
+
+        /**
+         * Records the time of a call of {@link MySearchInstance#findNext(int)} that
+         * took at least one step, and reports whether the call found a solution or
+         * exhausted the search space.
+         */
+        void searched(long nanos) {
+            this.searchNanos += nanos;
+            this.solutionNanos += nanos;
+            if (MySearchInstance.this.nextValid) {
+                found();
+            } else if (MySearchInstance.this.exhausted) {
+                completed();
+            }
+        }
+
+        private void found() {
+            this.solutionCount++;
+            this.maxSolutionNanos = Math.max(this.maxSolutionNanos, this.solutionNanos);
+            var event = new SolutionFoundEvent();
+            if (event.shouldCommit()) {
+                event.product = MySearchInstance.this.product.name();
+                event.size = MySearchInstance.this.madeSize;
+                event.steps = getStepCount() - this.solutionSteps;
+                event.backtracks = this.backtracks - this.solutionBacktracks;
+                event.searchTime = this.solutionNanos;
+                event.commit();
+            }
+            this.solutionNanos = 0;
+            this.solutionSteps = getStepCount();
+            this.solutionBacktracks = this.backtracks;
+        }
+
+        /** Reports the completion of the search, once. */
+        void completed() {
+            if (this.completed) {
+                return;
+            }
+            this.completed = true;
+            var event = new SearchCompletedEvent();
+            if (event.shouldCommit()) {
+                event.product = MySearchInstance.this.product.name();
+                event.solutions = this.solutionCount;
+                event.steps = getStepCount();
+                event.backtracks = this.backtracks;
+                event.maxMadeSize = this.maxMadeSize;
+                event.maxFrontierSize = this.maxFrontierSize;
+                event.deltaCount = this.deltaCount;
+                event.maxDeltaSize = this.maxDeltaSize;
+                event.searchTime = this.searchNanos;
+                event.maxSolutionTime = this.maxSolutionNanos;
+                event.commit();
+            }
+        }
+
+        @Override
+        public long getStepCount() {
+            return MySearchInstance.this.stepCount;
+        }
+
+        @Override
+        public long getBacktrackCount() {
+            return this.backtracks;
+        }
+
+        @Override
+        public int getMaxMadeSize() {
+            return this.maxMadeSize;
+        }
+
+        @Override
+        public int getMaxFrontierSize() {
+            return this.maxFrontierSize;
+        }
+
+        @Override
+        public long getDeltaCount() {
+            return this.deltaCount;
+        }
+
+        @Override
+        public int getMaxDeltaSize() {
+            return this.maxDeltaSize;
+        }
+
+        @Override
+        public long getSolutionCount() {
+            return this.solutionCount;
+        }
+
+        @Override
+        public long getSearchNanos() {
+            return this.searchNanos;
+        }
+
+        @Override
+        public long getMaxSolutionNanos() {
+            return this.maxSolutionNanos;
+        }
     }
 
-	private List<Edge> getInEdges(Node node) {
-        return this.gf.getInEdges(node);
-	}
-	
     static private final boolean LOG = false;
 
     private void log() {
         if (LOG) {
             var b = new StringBuilder();
             var i = 0;
-            for (var n : this.made) {
+            for (; i < this.madeSize; i++) {
+                var n = this.made[i];
                 b.append("" + i + ":");
-                b.append(this.makerIxMap.get(n));
+                b.append(this.makerIx[n]);
                 b.append('/');
-                b.append(getInEdges(n).size());
+                b.append(this.cg.getInEdgeCount(n));
                 b.append(' ');
-                i++;
             }
-            for (var n : this.frontier) {
+            for (var j = this.frontierSize - 1; j >= 0; j--) {
                 b.append("" + i + ":. ");
                 i++;
             }
@@ -262,61 +1151,51 @@ public class MySearchInstance implements Iterator<Solution> {
     private static final String FILE_SEP = System.getProperty("file.separator");
     private static final String DOT_DIR = System.getProperty("user.dir") + FILE_SEP + "dots";
 
+    /**
+     * Saves the DOT rendering of the current state in the {@code dots}
+     * directory. Always returns {@code false}, so that it can be used to dump
+     * the state when an assertion fails.
+     */
     public boolean saveAsDot(Edge... extra) {
-        File temp;
-        try {
-            temp = new File(DOT_DIR + FILE_SEP + this.gf.getName() + ".dot");
-            var fout = new FileWriter(temp);
-            fout.write(toDot(extra));
-            fout.close();
-        } catch (Exception e) {
+        try (var exporter = DotExporter.open(Path.of(DOT_DIR, this.cg.getName() + ".dot"))) {
+            exporter.writeState(this.cg.getName(), getMadeNodes(), getFoundNodes(extra), getStateEdges(extra));
+        } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
         }
         return false;
     }
 
+    /**
+     * Returns the DOT rendering of the current state, consisting of the made
+     * nodes, the found nodes and the makers, extended with given edges.
+     */
     public String toDot(Edge... extra) {
-        this.count = 0;
-        this.nodeNames = new HashMap<>();
-        var result = new StringBuilder();
-        result.append("digraph \"" + this.gf.getName() + "\" {\n");
-        result.append("node [style=filled,color=gold3,fillcolor=gold1,shape=box] \n");
-        result.append("edge [color=gold3] \n");
-        this.made.stream().map(this::madeNodeLine).forEach(result::append);
-        Arrays.stream(extra).map(Edge::target).map(this::foundNodeLine).forEach(result::append);
-        this.frontier.stream().map(this::foundNodeLine).forEach(result::append);
-        this.deltasMap.keySet().stream().map(this::edgeLines).forEach(result::append);
-        Arrays.stream(extra).map(this::edgeLines).forEach(result::append);
-        result.append("}");
-        return result.toString();
-    }
-
-    private int count;
-    private Map<Node, String> nodeNames;
-
-    private String madeNodeLine(Node node) {
-        var name = "" + this.count + ": " + node.name();
-        this.nodeNames.put(node, name);
-        this.count++;
-        return String.format("\"%s\" [color=deepskyblue3,fillcolor=deepskyblue1,shape=ellipse]%n", name);
-    }
-
-    private String foundNodeLine(Node node) {
-        var name = "" + this.count + ": " + node.name();
-        this.nodeNames.put(node, name);
-        this.count++;
-        return String.format("\"%s\" [color=deepskyblue3,fillcolor=cyan1,shape=ellipse]%n",
-                name);
-    }
-
-    private String edgeLines(Edge edge) {
-        var result = new StringBuilder();
-        result.append(String.format("\"%s\" [height=0,width=0] %n", edge.name()));
-        for (var i = 0; i < edge.source().size(); i++) {
-            result.append(String.format("\"%s\" -> \"%s\" [headlabel=\"%s\"]%n",
-                    this.nodeNames.get(edge.source().get(i)), edge.name(), i));
-        }
-        result.append(String.format("\"%s\" -> \"%s\"%n", edge.name(), this.nodeNames.get(edge.target())));
-        return result.toString();
+        return DotExporter.toDot(this.cg.getName(), getMadeNodes(), getFoundNodes(extra), getStateEdges(extra));
+    }
+
+    private List<Node> getMadeNodes() {
+        var result = new ArrayList<Node>();
+        for (var i = 0; i < this.madeSize; i++) {
+            result.add(this.cg.getNode(this.made[i]));
+        }
+        return result;
+    }
+
+    private List<Node> getFoundNodes(Edge... extra) {
+        var result = new ArrayList<Node>();
+        Arrays.stream(extra).map(Edge::target).forEach(result::add);
+        for (var i = this.frontierSize - 1; i >= 0; i--) {
+            result.add(this.cg.getNode(this.frontier[i]));
+        }
+        return result;
+    }
+
+    private List<Edge> getStateEdges(Edge... extra) {
+        var result = new ArrayList<Edge>();
+        for (var i = 0; i < this.madeSize; i++) {
+            result.add(this.cg.getEdge(getMaker(this.made[i])));
+        }
+        result.addAll(Arrays.asList(extra));
+        return result;
     }
 }
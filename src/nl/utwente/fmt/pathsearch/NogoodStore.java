@@ -0,0 +1,179 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Store of nogoods learned during a search. A nogood for a node is a set of
+ * nodes that intersects the pre-nodes of every in-edge of the node; a node
+ * whose downstream set includes a nogood therefore has no feasible maker, and
+ * any branch of the search in which that is the case cannot yield solutions.
+ * <p>
+ * The store holds at most a given number of node numbers in total. When it is
+ * full, nogoods are evicted according to the clock (second chance) policy:
+ * the oldest nogood is evicted, unless it was used since it last came up for
+ * eviction, in which case it gets another round.
+ * @author Arend Rensink
+ */
+class NogoodStore {
+    /** Maximal number of node numbers stored in all nogoods together. */
+    private final int capacity;
+    /** The nogoods of each node; {@code null} for nodes without nogoods. */
+    private final List<Nogood>[] nogoods;
+    /** The stored nogoods, in clock order. */
+    private final ArrayDeque<Nogood> clock = new ArrayDeque<>();
+    /** Number of node numbers currently stored. */
+    private int size;
+    /** Number of nogoods currently stored. */
+    private int count;
+    /** Number of nogoods learned so far. */
+    private long learnCount;
+    /** Number of times a stored nogood pruned the search. */
+    private long hitCount;
+
+    NogoodStore(int nodeCount, int capacity) {
+        this.capacity = capacity;
+        @SuppressWarnings("unchecked")
+        var nogoods = (List<Nogood>[]) new List<?>[nodeCount];
+        this.nogoods = nogoods;
+    }
+
+    /**
+     * Tests if a given downstream set of a node includes one of the node's
+     * nogoods, and marks that nogood as used.
+     */
+    boolean covers(int node, long[] downstream) {
+        var list = this.nogoods[node];
+        if (list == null) {
+            return false;
+        }
+        for (var nogood : list) {
+            if (nogood.isSubsetOf(downstream)) {
+                nogood.used = true;
+                this.hitCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a nogood for a given node, unless it is subsumed by one that is
+     * already there; nogoods that it subsumes in turn are removed.
+     */
+    void add(int node, int[] witnesses, long[] witnessSet) {
+        if (witnesses.length > this.capacity) {
+            return;
+        }
+        var list = this.nogoods[node];
+        if (list != null) {
+            for (var iter = list.iterator(); iter.hasNext();) {
+                var nogood = iter.next();
+                if (nogood.isSubsetOf(witnessSet)) {
+                    return;
+                }
+                if (nogood.isSupersetOf(witnesses)) {
+                    iter.remove();
+                    nogood.removed = true;
+                    this.size -= nogood.witnesses.length;
+                    this.count--;
+                }
+            }
+            if (list.isEmpty()) {
+                this.nogoods[node] = null;
+            }
+            if (this.clock.size() > 2 * this.count + 16) {
+                // purge the nogoods that were removed because they were subsumed
+                this.clock.removeIf(n -> n.removed);
+            }
+        }
+        while (this.size + witnesses.length > this.capacity) {
+            evict();
+        }
+        list = this.nogoods[node];
+        if (list == null) {
+            list = this.nogoods[node] = new ArrayList<>(2);
+        }
+        var nogood = new Nogood(node, witnesses);
+        list.add(nogood);
+        this.clock.add(nogood);
+        this.size += witnesses.length;
+        this.count++;
+        this.learnCount++;
+    }
+
+    /** Evicts one nogood, according to the clock policy. */
+    private void evict() {
+        while (true) {
+            var nogood = this.clock.poll();
+            if (nogood.removed) {
+                continue;
+            }
+            if (nogood.used) {
+                nogood.used = false;
+                this.clock.add(nogood);
+            } else {
+                var list = this.nogoods[nogood.node];
+                list.remove(nogood);
+                if (list.isEmpty()) {
+                    this.nogoods[nogood.node] = null;
+                }
+                nogood.removed = true;
+                this.size -= nogood.witnesses.length;
+                this.count--;
+                return;
+            }
+        }
+    }
+
+    /** Returns the number of node numbers currently stored. */
+    int size() {
+        return this.size;
+    }
+
+    long getLearnCount() {
+        return this.learnCount;
+    }
+
+    long getHitCount() {
+        return this.hitCount;
+    }
+
+    /** Nogood of a single node. */
+    private static class Nogood {
+        Nogood(int node, int[] witnesses) {
+            this.node = node;
+            this.witnesses = witnesses;
+        }
+
+        final int node;
+        /** The nodes in the nogood. */
+        final int[] witnesses;
+        /** Flag indicating that the nogood was used since it last came up for eviction. */
+        boolean used;
+        /** Flag indicating that the nogood was removed from the store, but may still be in the clock. */
+        boolean removed;
+
+        boolean isSubsetOf(long[] nodes) {
+            for (var n : this.witnesses) {
+                if ((nodes[n >>> 6] & (1L << n)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isSupersetOf(int[] nodes) {
+            outer: for (var n : nodes) {
+                for (var w : this.witnesses) {
+                    if (w == n) {
+                        continue outer;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+}
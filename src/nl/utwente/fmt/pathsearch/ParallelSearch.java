@@ -0,0 +1,242 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Search that enumerates the solutions of a product in parallel. The search
+ * tree is split at maker choice points: whenever the fork-join pool runs out
+ * of queued work, a running search instance hands the untried makers of its
+ * lowest unfixed made node to a new task, which idle workers can steal.
+ * Solutions are delivered in no particular order.
+ * @author Arend Rensink
+ */
+public class ParallelSearch implements Search {
+    /** Number of search steps between checks for splitting. */
+    private static final int SPLIT_INTERVAL = 256;
+    /** Number of queued tasks below which running tasks split off work. */
+    private static final int SURPLUS = 2;
+    /** Capacity of the solution queue of {@link #search(Node)}. */
+    private static final int QUEUE_SIZE = 1024;
+
+    private final MySearch search;
+    private final ForkJoinPool pool;
+
+    public ParallelSearch(Graph graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    public ParallelSearch(Graph graph, ForkJoinPool pool) {
+        this.search = new MySearch(graph);
+        this.pool = pool;
+    }
+
+    public Graph getGraph() {
+        return this.search.getGraph();
+    }
+
+    @Override
+    public SolutionIterator search(String name) {
+        return search(new Node(name));
+    }
+
+    /**
+     * Starts a parallel enumeration of the solutions of a given product, and
+     * returns an iterator over them. The enumeration runs ahead of the iterator
+     * by at most a fixed number of solutions; it is stopped when the iterator
+     * is closed.
+     */
+    @Override
+    public SolutionIterator search(Node product) {
+        var result = new SolutionIterator();
+        this.pool.execute(() -> {
+            try {
+                forEachSolution(product, v -> result.put(v.toSolution()), result.context);
+            } catch (Throwable exc) {
+                result.error = exc;
+            } finally {
+                result.done = true;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Enumerates the solutions of a given product in parallel, and passes them
+     * to a given sink. The sink is called concurrently from the worker threads
+     * of the pool, and must therefore be thread-safe; each view is only valid
+     * during the call.
+     */
+    @Override
+    public void forEachSolution(Node product, Consumer<? super SolutionView> sink) {
+        forEachSolution(product, sink, new Enumeration());
+    }
+
+    /**
+     * Counts the solutions of a given product in parallel. Every task keeps its
+     * own count, which is merged into the result when the task is done.
+     */
+    @Override
+    public SolutionCount count(Node product) {
+        var result = new SolutionCount(product);
+        var context = new Enumeration();
+        context.result = result;
+        forEachSolution(product, null, context);
+        return result;
+    }
+
+    private void forEachSolution(Node product, Consumer<? super SolutionView> sink, Enumeration context) {
+        context.sink = sink;
+        var root = new SearchTask(new MySearchInstance(this.search.getCompactGraph(product), product), context);
+        if (ForkJoinTask.inForkJoinPool()) {
+            root.invoke();
+        } else {
+            this.pool.invoke(root);
+        }
+    }
+
+    /** State shared by all tasks of one enumeration. */
+    private static class Enumeration {
+        /** Destination of the solutions found, if they are not just counted. */
+        Consumer<? super SolutionView> sink;
+        /** Merged count of the solutions found, if they are counted. */
+        SolutionCount result;
+        /** Flag indicating that the enumeration should stop. */
+        volatile boolean cancelled;
+    }
+
+    /** Task exploring the search space of a single search instance. */
+    private static class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final MySearchInstance instance;
+        private final Enumeration context;
+
+        SearchTask(MySearchInstance instance, Enumeration context) {
+            this.instance = instance;
+            this.context = context;
+        }
+
+        @Override
+        protected void compute() {
+            var forks = new ArrayList<SearchTask>();
+            var sink = this.context.sink;
+            var count = this.context.result == null ? null : new SolutionCount(this.context.result.getProduct());
+            while (!this.context.cancelled && !this.instance.isExhausted()) {
+                if (this.instance.findNext(SPLIT_INTERVAL) && this.instance.hasNext()) {
+                    var view = this.instance.nextView();
+                    if (count == null) {
+                        sink.accept(view);
+                    } else {
+                        count.addSolution(view.size());
+                    }
+                }
+                if (getSurplusQueuedTaskCount() < SURPLUS) {
+                    var split = this.instance.split();
+                    if (split != null) {
+                        var task = new SearchTask(split, this.context);
+                        task.fork();
+                        forks.add(task);
+                    }
+                }
+            }
+            if (count != null) {
+                count.addSteps(this.instance.getStepCount());
+                synchronized (this.context.result) {
+                    this.context.result.addAll(count);
+                }
+            }
+            forks.forEach(ForkJoinTask::join);
+        }
+    }
+
+    /**
+     * Iterator over the solutions of a parallel enumeration. Closing the
+     * iterator stops the enumeration.
+     */
+    public static class SolutionIterator implements Iterator<Solution>, AutoCloseable {
+        private final Enumeration context = new Enumeration();
+        private final BlockingQueue<Solution> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        /** Flag indicating that the enumeration has finished. */
+        private volatile boolean done;
+        /** Exception thrown during the enumeration, if any. */
+        private volatile Throwable error;
+        /** Next solution to be returned, if already taken from the queue. */
+        private Solution next;
+
+        private SolutionIterator() {
+            // only to be constructed by the search
+        }
+
+        /** Offers a solution to the queue, blocking (cooperatively) while it is full. */
+        private void put(Solution solution) {
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        while (!SolutionIterator.this.context.cancelled
+                                && !SolutionIterator.this.queue.offer(solution, 10, TimeUnit.MILLISECONDS)) {
+                            // try again
+                        }
+                        this.released = true;
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return this.released || (this.released = SolutionIterator.this.queue.offer(solution));
+                    }
+
+                    private boolean released;
+                });
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                this.context.cancelled = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (this.next == null && !this.context.cancelled) {
+                    if (this.done) {
+                        // the queue is complete; take whatever is left
+                        this.next = this.queue.poll();
+                        break;
+                    }
+                    this.next = this.queue.poll(10, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                close();
+            }
+            if (this.next == null && this.error != null) {
+                throw new IllegalStateException("Parallel search failed", this.error);
+            }
+            return this.next != null;
+        }
+
+        @Override
+        public Solution next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var result = this.next;
+            this.next = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            this.context.cancelled = true;
+            this.queue.clear();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package nl.utwente.fmt.pathsearch;
 
 import java.util.Iterator;
+import java.util.function.Consumer;
 
 /**
  * Algorithm interface for the search
@@ -9,4 +10,14 @@ public interface Search {
     Iterator<Solution> search(String name);
 
     Iterator<Solution> search(Node product);
+
+    /**
+     * Enumerates the solutions of a product without materialising them. Each
+     * solution is passed to the action as a view that is only valid during the
+     * call.
+     */
+    void forEachSolution(Node product, Consumer<? super SolutionView> action);
+
+    /** Counts the solutions of a product, without materialising them. */
+    SolutionCount count(Node product);
 }
@@ -0,0 +1,142 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Checkpoint of the state of a running search, from which the search can be
+ * resumed later, possibly in another process, over the same graph. The state
+ * of a search is determined by the sequence of maker choices of its made
+ * nodes; the found nodes, the frontier and the downstream sets all follow from
+ * it. A checkpoint therefore consists of this sequence, the control flags of
+ * the search and its step count, and is restored by replaying the choices.
+ * <p>
+ * The format consists of a magic number and version, followed by the
+ * fingerprint of the compact graph searched (see
+ * {@link CompactGraph#getFingerprint()}), the product name, the step count,
+ * the flags, the ordering of the in-edges, the number of fixed made nodes and
+ * the maker choices. The ordering is one of the fixed orderings of
+ * {@link EdgeOrdering}; the order of an adaptive ordering depends on its
+ * history, which is not saved, so searches using one cannot be checkpointed.
+ * @author Arend Rensink
+ */
+public class SearchCheckpoint {
+    /** Magic number at the start of every checkpoint. */
+    private static final int MAGIC = 0x50534350;
+    /** Current version of the checkpoint format. */
+    private static final int VERSION = 2;
+    private static final int FORWARD = 1;
+    private static final int NEXT_VALID = 2;
+    private static final int COMPLETE = 4;
+    private static final int NO_BACKJUMPING = 8;
+    private static final int COLLAPSED = 16;
+    /** Orderings that can be saved, indexed by their code in the checkpoint. */
+    private static final List<EdgeOrdering> ORDERINGS =
+            List.of(EdgeOrdering.DEFAULT, EdgeOrdering.BY_DEPTH, EdgeOrdering.BY_PRE_SIZE);
+
+    private SearchCheckpoint() {
+        // static methods only
+    }
+
+    /**
+     * Writes a checkpoint of a search instance. An instance stopped by one of
+     * its limits is saved as it was when it stopped, so that it can continue.
+     * @throws IllegalArgumentException if the instance has a cost bound or its
+     *         in-edges are not in one of the fixed orderings of
+     *         {@link EdgeOrdering}, which are not saved
+     */
+    public static void save(MySearchInstance instance, Path file) throws IOException {
+        if (instance.isBounded()) {
+            throw new IllegalArgumentException("Cannot checkpoint a search with a cost bound");
+        }
+        var cg = instance.getCompactGraph();
+        var ordering = ORDERINGS.indexOf(cg.getOrdering());
+        if (ordering < 0) {
+            throw new IllegalArgumentException(
+                    String.format("Cannot checkpoint a search with ordering %s", cg.getOrdering()));
+        }
+        var prefix = instance.getPrefix();
+        var flags = (instance.isForward() ? FORWARD : 0) | (instance.isNextValid() ? NEXT_VALID : 0)
+                | (instance.isComplete() ? COMPLETE : 0) | (instance.isBackjumping() ? 0 : NO_BACKJUMPING)
+                | (cg.isCollapsed() ? COLLAPSED : 0);
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(cg.getFingerprint());
+            out.writeUTF(instance.getProduct().name());
+            out.writeLong(instance.getStepCount());
+            out.writeByte(flags);
+            out.writeByte(ordering);
+            out.writeInt(instance.getFloor());
+            out.writeInt(prefix.length);
+            for (var makerIx : prefix) {
+                out.writeInt(makerIx);
+            }
+        }
+    }
+
+    /**
+     * Resumes a search from a checkpoint, over the graph of a given search.
+     * @throws IOException if the file is not a checkpoint, is truncated or
+     *         corrupt, or was written for a different graph
+     */
+    public static MySearchInstance load(MySearch search, Path file) throws IOException {
+        // checkpoints are small, and reading them whole tells how many bytes are left
+        try (var in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(String.format("File %s is not a search checkpoint", file));
+            }
+            var version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported checkpoint version %s in %s", version, file));
+            }
+            var fingerprint = in.readLong();
+            var product = new Node(in.readUTF());
+            var stepCount = in.readLong();
+            var flags = in.readByte();
+            var ordering = in.readByte();
+            if (ordering < 0 || ordering >= ORDERINGS.size()) {
+                throw new IOException(String.format("Corrupt checkpoint %s: unknown ordering %s", file, ordering));
+            }
+            var cg = search.getCompactGraph(product, ORDERINGS.get(ordering));
+            if ((flags & COLLAPSED) != 0) {
+                cg = cg.getCollapsed();
+            }
+            if (cg.getFingerprint() != fingerprint) {
+                throw new IOException(String.format("Checkpoint %s was written for a different graph than %s", file,
+                        cg.getName()));
+            }
+            var floor = in.readInt();
+            var length = in.readInt();
+            // every made node has one maker choice, of four bytes
+            if (length < 0 || length > cg.getNodeCount() || length > in.available() / 4) {
+                throw new IOException(String.format("Corrupt checkpoint %s: invalid number of maker choices %s", file,
+                        length));
+            }
+            var prefix = new int[length];
+            for (var i = 0; i < prefix.length; i++) {
+                prefix[i] = in.readInt();
+            }
+            var result = new MySearchInstance(cg, product).setBackjumping((flags & NO_BACKJUMPING) == 0);
+            try {
+                result.restore(prefix, floor, (flags & FORWARD) != 0, (flags & NEXT_VALID) != 0,
+                        (flags & COMPLETE) != 0, stepCount);
+            } catch (IllegalArgumentException exc) {
+                throw new IOException(String.format("Corrupt checkpoint %s: %s", file, exc.getMessage()), exc);
+            }
+            return result;
+        } catch (EOFException exc) {
+            throw new IOException(String.format("Corrupt checkpoint %s: unexpected end of file", file), exc);
+        } catch (UTFDataFormatException exc) {
+            throw new IOException(String.format("Corrupt checkpoint %s: malformed product name", file), exc);
+        }
+    }
+}
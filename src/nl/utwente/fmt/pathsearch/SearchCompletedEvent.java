@@ -0,0 +1,51 @@
+package nl.utwente.fmt.pathsearch;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event recording that a search instance has exhausted its search space,
+ * with the metrics of the entire search.
+ * @author Arend Rensink
+ */
+@Name("nl.utwente.fmt.pathsearch.SearchCompleted")
+@Label("Search Completed")
+@Category("Path Search")
+@StackTrace(false)
+class SearchCompletedEvent extends Event {
+    @Label("Product")
+    String product;
+
+    @Label("Solutions")
+    long solutions;
+
+    @Label("Steps")
+    long steps;
+
+    @Label("Backtracks")
+    long backtracks;
+
+    @Label("Max Made Size")
+    int maxMadeSize;
+
+    @Label("Max Frontier Size")
+    int maxFrontierSize;
+
+    @Label("Delta Count")
+    long deltaCount;
+
+    @Label("Max Delta Size")
+    int maxDeltaSize;
+
+    @Label("Search Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long searchTime;
+
+    @Label("Max Solution Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long maxSolutionTime;
+}
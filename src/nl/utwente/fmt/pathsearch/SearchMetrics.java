@@ -0,0 +1,40 @@
+package nl.utwente.fmt.pathsearch;
+
+/**
+ * Metrics of a single search instance, collected while the search runs if
+ * enabled through {@link MySearchInstance#enableMetrics()}. The same metrics
+ * are also reported as JFR events (see {@link SolutionFoundEvent} and
+ * {@link SearchCompletedEvent}) whenever a flight recording has these enabled.
+ * @author Arend Rensink
+ */
+public interface SearchMetrics {
+    /** Returns the number of search steps taken so far. */
+    long getStepCount();
+
+    /** Returns the number of times the search backtracked to try the next maker of a made node. */
+    long getBacktrackCount();
+
+    /** Returns the maximal number of made nodes so far. */
+    int getMaxMadeSize();
+
+    /** Returns the maximal number of nodes in the frontier so far. */
+    int getMaxFrontierSize();
+
+    /**
+     * Returns the total size of the downstream deltas so far, being the number
+     * of downstream words changed by the makers added.
+     */
+    long getDeltaCount();
+
+    /** Returns the maximal size of the downstream delta of a single maker. */
+    int getMaxDeltaSize();
+
+    /** Returns the number of solutions found so far. */
+    long getSolutionCount();
+
+    /** Returns the time spent searching so far, in nanoseconds. */
+    long getSearchNanos();
+
+    /** Returns the maximal time spent on finding a single solution, in nanoseconds. */
+    long getMaxSolutionNanos();
+}
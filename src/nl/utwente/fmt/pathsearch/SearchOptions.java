@@ -0,0 +1,150 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Options of a search. Most of these are limits: a wall-clock deadline, a
+ * timeout relative to the start of the search, a maximum number of search
+ * steps and a cancellation token. A search that hits a limit stops, rather
+ * than continuing to look for the next solution, and reports why through its
+ * {@link SearchStatus}. Moreover, the options determine whether the search
+ * learns nogoods (see {@link MySearchInstance#enableNogoods(int)}) and whether
+ * it backjumps (see {@link MySearchInstance#setBackjumping(boolean)}), and the
+ * order in which {@link MySearch#search(Node, SearchOptions)} tries the in-edges
+ * of every node (see {@link EdgeOrdering}). Options
+ * are immutable; the {@code with} methods return modified copies.
+ * @author Arend Rensink
+ */
+public class SearchOptions {
+    /** Options without any limits. */
+    public static final SearchOptions NONE = new SearchOptions(null, null, Long.MAX_VALUE, null, 0, true,
+            EdgeOrdering.DEFAULT);
+    /** Default capacity of the nogood store, in node numbers. */
+    public static final int DEFAULT_NOGOOD_CAPACITY = 1 << 20;
+
+    private final Instant deadline;
+    private final Duration timeout;
+    private final long maxSteps;
+    private final CancellationToken token;
+    private final int nogoodCapacity;
+    private final boolean backjumping;
+    private final EdgeOrdering ordering;
+
+    private SearchOptions(Instant deadline, Duration timeout, long maxSteps, CancellationToken token,
+            int nogoodCapacity, boolean backjumping, EdgeOrdering ordering) {
+        this.deadline = deadline;
+        this.timeout = timeout;
+        this.maxSteps = maxSteps;
+        this.token = token;
+        this.nogoodCapacity = nogoodCapacity;
+        this.backjumping = backjumping;
+        this.ordering = ordering;
+    }
+
+    /** Returns a copy of these options with a given wall-clock deadline. */
+    public SearchOptions withDeadline(Instant deadline) {
+        return new SearchOptions(deadline, this.timeout, this.maxSteps, this.token,
+                this.nogoodCapacity, this.backjumping, this.ordering);
+    }
+
+    /** Returns a copy of these options with a given timeout, counting from the start of the search. */
+    public SearchOptions withTimeout(Duration timeout) {
+        return new SearchOptions(this.deadline, timeout, this.maxSteps, this.token,
+                this.nogoodCapacity, this.backjumping, this.ordering);
+    }
+
+    /** Returns a copy of these options with a given maximum number of search steps. */
+    public SearchOptions withMaxSteps(long maxSteps) {
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException(String.format("Negative step limit %s", maxSteps));
+        }
+        return new SearchOptions(this.deadline, this.timeout, maxSteps, this.token,
+                this.nogoodCapacity, this.backjumping, this.ordering);
+    }
+
+    /** Returns a copy of these options with a given cancellation token. */
+    public SearchOptions withCancellation(CancellationToken token) {
+        return new SearchOptions(this.deadline, this.timeout, this.maxSteps, token,
+                this.nogoodCapacity, this.backjumping, this.ordering);
+    }
+
+    /**
+     * Returns a copy of these options in which the search learns nogoods, stored
+     * up to a given number of node numbers; 0 means that no nogoods are learned.
+     */
+    public SearchOptions withNogoods(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(String.format("Negative nogood capacity %s", capacity));
+        }
+        return new SearchOptions(this.deadline, this.timeout, this.maxSteps, this.token,
+                capacity, this.backjumping, this.ordering);
+    }
+
+    /** Returns a copy of these options in which the search does or does not backjump. */
+    public SearchOptions withBackjumping(boolean backjumping) {
+        return new SearchOptions(this.deadline, this.timeout, this.maxSteps, this.token, this.nogoodCapacity,
+                backjumping, this.ordering);
+    }
+
+    /** Returns a copy of these options with a given ordering of the in-edges. */
+    public SearchOptions withOrdering(EdgeOrdering ordering) {
+        return new SearchOptions(this.deadline, this.timeout, this.maxSteps, this.token, this.nogoodCapacity,
+                this.backjumping, ordering);
+    }
+
+    public Instant getDeadline() {
+        return this.deadline;
+    }
+
+    public Duration getTimeout() {
+        return this.timeout;
+    }
+
+    public long getMaxSteps() {
+        return this.maxSteps;
+    }
+
+    public CancellationToken getCancellation() {
+        return this.token;
+    }
+
+    /** Returns the capacity of the nogood store; 0 if no nogoods are learned. */
+    public int getNogoodCapacity() {
+        return this.nogoodCapacity;
+    }
+
+    /** Indicates whether the search backjumps; this is the default. */
+    public boolean isBackjumping() {
+        return this.backjumping;
+    }
+
+    public EdgeOrdering getOrdering() {
+        return this.ordering;
+    }
+
+    /**
+     * Returns the moment at which a search starting now should stop, on the
+     * scale of {@link System#nanoTime()}, or {@link Long#MAX_VALUE} if there is
+     * neither a deadline nor a timeout.
+     */
+    long getStopNanos() {
+        var now = System.nanoTime();
+        var result = Long.MAX_VALUE;
+        if (this.timeout != null) {
+            result = saturatedAdd(now, this.timeout);
+        }
+        if (this.deadline != null) {
+            result = Math.min(result, saturatedAdd(now, Duration.between(Instant.now(), this.deadline)));
+        }
+        return result;
+    }
+
+    private static long saturatedAdd(long nanos, Duration duration) {
+        try {
+            return Math.addExact(nanos, duration.toNanos());
+        } catch (ArithmeticException exc) {
+            return duration.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+}
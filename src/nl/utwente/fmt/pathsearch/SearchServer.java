@@ -0,0 +1,395 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server answering queries over graphs that are loaded once, when
+ * the server starts. Every request is handled on a thread of its own, and runs
+ * a search instance of its own over the shared pruned graph. The server binds
+ * to the loopback address only. Its endpoints are:
+ * <ul>
+ * <li>{@code /graphs}: the names of the loaded graphs, one per line;
+ * <li>{@code /search?graph=G&product=P[&limit=K][&order=size]}: the
+ * solutions of a product, streamed as they are found, as one JSON object per
+ * line; with {@code order=size}, the solutions are returned in order of
+ * increasing size, so that {@code limit} gives the {@code K} smallest ones;
+ * <li>{@code /count?graph=G&product=P}: the number of solutions of a product,
+ * with their size histogram, as a single JSON object.
+ * </ul>
+ * Searches and counts can be limited by adding {@code timeout=MS} and
+ * {@code steps=N}; with {@code order=size}, every state expanded by the
+ * {@link BestFirstSearch} counts as a step. Without a {@code timeout} parameter, the default
+ * timeout of the server applies (see {@link #setDefaultTimeout(Duration)}),
+ * and all running requests are cancelled when the server stops, so that no
+ * request can occupy a thread indefinitely. A search that is stopped by a
+ * limit ends with a line containing only its status, and a count includes its
+ * status.
+ * Request handlers run on virtual threads where the platform offers them, and
+ * on a cached thread pool otherwise.
+ * @author Arend Rensink
+ */
+public class SearchServer {
+    /** Initial default timeout of the requests. */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(1);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    /** The searches of the loaded graphs, by graph name. */
+    private final Map<String, MySearch> searches = new ConcurrentSkipListMap<>();
+    /** Timeout of the requests that do not give one; {@code null} if there is none. */
+    private volatile Duration defaultTimeout = DEFAULT_TIMEOUT;
+    /** Token through which the running requests are cancelled when the server stops. */
+    private final CancellationToken stopping = new CancellationToken();
+
+    /** Constructs a server on a given port of the loopback address; port 0 selects a free one. */
+    public SearchServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newExecutor();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/graphs", this::handleGraphs);
+        this.server.createContext("/search", this::handleSearch);
+        this.server.createContext("/count", this::handleCount);
+    }
+
+    /**
+     * Returns an executor starting a virtual thread per task, if the platform
+     * supports this, or a cached thread pool otherwise.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException exc) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Makes a graph available under a given name, replacing any graph of the same name. */
+    public void addGraph(String name, MySearch search) {
+        this.searches.put(name, search);
+    }
+
+    /**
+     * Sets the timeout of the requests that do not give one with a
+     * {@code timeout} parameter; {@code null} means no timeout.
+     */
+    public void setDefaultTimeout(Duration timeout) {
+        this.defaultTimeout = timeout;
+    }
+
+    public Duration getDefaultTimeout() {
+        return this.defaultTimeout;
+    }
+
+    /** Returns the port the server listens on. */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    /** Stops the server, cancelling the running requests and waiting at most a given number of seconds for them. */
+    public void stop(int delay) {
+        this.stopping.cancel();
+        this.server.stop(delay);
+        this.executor.shutdownNow();
+    }
+
+    private void handleGraphs(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var result = new StringBuilder();
+            this.searches.keySet().forEach(n -> result.append(n).append('\n'));
+            send(exchange, 200, "text/plain", result.toString());
+        }
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var query = new Query(exchange);
+            var search = query.getSearch();
+            var product = query.getProduct();
+            if (search == null || product == null) {
+                return;
+            }
+            var limit = query.getLimit();
+            var options = query.getOptions();
+            if (limit < 0 || options == null) {
+                return;
+            }
+            Iterator<Solution> solutions;
+            Supplier<SearchStatus> status;
+            if ("size".equals(query.get("order"))) {
+                var instance = new BestFirstSearch(search).search(product, limit, options);
+                solutions = instance;
+                status = instance::getStatus;
+            } else {
+                var instance = search.search(product, options);
+                solutions = instance;
+                status = instance::getStatus;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            var out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+            // the search stops when the client goes away, as the write then fails
+            for (var count = 0; count < limit && solutions.hasNext(); count++) {
+                writeSolution(out, solutions.next());
+                out.flush();
+            }
+            var result = status.get();
+            if (result != SearchStatus.COMPLETE && result != SearchStatus.RUNNING) {
+                out.write(String.format("{\"status\":\"%s\"}%n", result));
+            }
+            out.flush();
+        }
+    }
+
+    /** Writes a solution as a single line of JSON. */
+    private static void writeSolution(Writer out, Solution solution) throws IOException {
+        out.write("{\"size\":");
+        out.write(Integer.toString(solution.size()));
+        out.write(",\"steps\":");
+        out.write(Long.toString(solution.getStepCount()));
+        out.write(",\"edges\":[");
+        for (var i = 0; i < solution.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeString(out, solution.get(i).name());
+        }
+        out.write("]}\n");
+    }
+
+    private void handleCount(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var query = new Query(exchange);
+            var search = query.getSearch();
+            var product = query.getProduct();
+            if (search == null || product == null) {
+                return;
+            }
+            var options = query.getOptions();
+            if (options == null) {
+                return;
+            }
+            var count = search.count(product, options);
+            var result = new StringBuilder();
+            result.append("{\"product\":");
+            appendString(result, product.name());
+            result.append(",\"status\":\"").append(count.getStatus()).append('"');
+            result.append(",\"solutions\":").append(count.getSolutionCount());
+            result.append(",\"steps\":").append(count.getStepCount());
+            result.append(",\"sizes\":{");
+            var first = true;
+            for (var entry : count.getSizeHistogram().entrySet()) {
+                if (!first) {
+                    result.append(',');
+                }
+                first = false;
+                result.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            }
+            result.append("}}\n");
+            send(exchange, 200, "application/json", result.toString());
+        }
+    }
+
+    /** Sends a complete response with a given status code, content type and body. */
+    private static void send(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /** Writes a string as a JSON string literal. */
+    private static void writeString(Writer out, String value) throws IOException {
+        var result = new StringBuilder(value.length() + 2);
+        appendString(result, value);
+        out.write(result.toString());
+    }
+
+    /** Appends a string as a JSON string literal. */
+    private static void appendString(StringBuilder result, String value) {
+        result.append('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        result.append('"');
+    }
+
+    /**
+     * Parameters of a request. The getters send an error response and return
+     * {@code null} (or a negative number) if a parameter is missing or invalid.
+     */
+    private class Query {
+        Query(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.params = new HashMap<>();
+            var query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (var param : query.split("&")) {
+                    var eq = param.indexOf('=');
+                    if (eq > 0) {
+                        this.params.put(decode(param.substring(0, eq)), decode(param.substring(eq + 1)));
+                    }
+                }
+            }
+        }
+
+        private final HttpExchange exchange;
+        private final Map<String, String> params;
+
+        String get(String name) {
+            return this.params.get(name);
+        }
+
+        MySearch getSearch() throws IOException {
+            var name = get("graph");
+            if (name == null) {
+                error(400, "Missing parameter 'graph'");
+                return null;
+            }
+            var result = SearchServer.this.searches.get(name);
+            if (result == null) {
+                error(404, String.format("Unknown graph '%s'", name));
+            }
+            return result;
+        }
+
+        Node getProduct() throws IOException {
+            var name = get("product");
+            if (name == null) {
+                error(400, "Missing parameter 'product'");
+                return null;
+            }
+            return new Node(name);
+        }
+
+        int getLimit() throws IOException {
+            return (int) Math.min(getNumber("limit", Integer.MAX_VALUE), Integer.MAX_VALUE);
+        }
+
+        /**
+         * Returns the search options given by the timeout and step parameters,
+         * with the default timeout of the server if there is no timeout parameter.
+         */
+        SearchOptions getOptions() throws IOException {
+            var result = SearchOptions.NONE.withCancellation(SearchServer.this.stopping);
+            var timeout = getNumber("timeout", -1);
+            if (timeout >= 0) {
+                result = result.withTimeout(Duration.ofMillis(timeout));
+            } else if (timeout < -1) {
+                return null;
+            } else if (SearchServer.this.defaultTimeout != null) {
+                result = result.withTimeout(SearchServer.this.defaultTimeout);
+            }
+            var steps = getNumber("steps", Long.MAX_VALUE);
+            if (steps < 0) {
+                return null;
+            }
+            return result.withMaxSteps(steps);
+        }
+
+        /**
+         * Returns the value of a non-negative numeric parameter, or a given default
+         * value if the parameter is missing. If the value is invalid, sends an
+         * error response and returns {@code -2}.
+         */
+        private long getNumber(String name, long defaultValue) throws IOException {
+            var value = get(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                var result = Long.parseLong(value);
+                if (result >= 0) {
+                    return result;
+                }
+            } catch (NumberFormatException exc) {
+                // fall through to the error
+            }
+            error(400, String.format("Invalid %s '%s'", name, value));
+            return -2;
+        }
+
+        private void error(int code, String message) throws IOException {
+            send(this.exchange, code, "text/plain", message + "\n");
+        }
+
+        private static String decode(String value) {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Starts a server on a given port, for a list of graphs. Every graph is
+     * either a CSV file, optionally followed by {@code =} and a comma-separated
+     * list of generators, or a snapshot written by {@link MySearch#save(Path)}.
+     * Graphs are available under their file name, without extension. The port
+     * may be preceded by {@code --timeout=MS}, setting the default timeout of
+     * the requests; 0 means no timeout.
+     */
+    public static void main(String[] args) {
+        var first = args.length > 0 && args[0].startsWith("--timeout=") ? 1 : 0;
+        if (args.length < first + 2) {
+            System.err.println("Usage: SearchServer [--timeout=<ms>] <port> <file>[=<generator>,...]...");
+            System.exit(1);
+        }
+        try {
+            var server = new SearchServer(Integer.parseInt(args[first]));
+            if (first > 0) {
+                var timeout = Long.parseLong(args[0].substring("--timeout=".length()));
+                server.setDefaultTimeout(timeout == 0 ? null : Duration.ofMillis(timeout));
+            }
+            for (var i = first + 1; i < args.length; i++) {
+                var arg = args[i].split("=", 2);
+                var file = Path.of(arg[0]);
+                var name = file.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+                MySearch search;
+                if (arg[0].endsWith(".csv")) {
+                    var graph = new CSVGraphReader(arg[0]).run();
+                    if (arg.length > 1) {
+                        for (var generator : arg[1].split(",")) {
+                            graph.addGenerator(generator);
+                        }
+                    }
+                    search = new MySearch(graph);
+                } else {
+                    search = MySearch.load(file);
+                }
+                server.addGraph(name, search);
+            }
+            server.start();
+            System.out.printf("Listening on port %s%n", server.getPort());
+        } catch (Exception exc) {
+            exc.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package nl.utwente.fmt.pathsearch;
+
+/**
+ * Status of a search. Unless the status is {@link #COMPLETE}, the solutions
+ * found so far are only part of the solutions.
+ * @author Arend Rensink
+ */
+public enum SearchStatus {
+    /** The search is still running, or can still be continued. */
+    RUNNING,
+    /** The search space has been exhausted. */
+    COMPLETE,
+    /** The search was stopped because its deadline passed. */
+    DEADLINE_EXCEEDED,
+    /** The search was stopped because it reached its maximum number of steps. */
+    STEP_LIMIT_REACHED,
+    /** The search was stopped through its cancellation token. */
+    CANCELLED;
+}
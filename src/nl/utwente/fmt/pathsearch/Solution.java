@@ -1,40 +1,95 @@
 package nl.utwente.fmt.pathsearch;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-public class Solution extends ArrayList<Edge> {
+/**
+ * Solution of a search, as an immutable list of edges. Only the numbers of the
+ * edges in the compact graph of the search are stored; the edges themselves
+ * are looked up on demand.
+ * @author Arend Rensink
+ */
+public class Solution extends AbstractList<Edge> implements SolutionView {
     private static final String FILE_SEP = System.getProperty("file.separator");
     private static final String DOT_DIR = System.getProperty("user.dir") + FILE_SEP + "dots";
-    private static int id_count;
-    private int stepCount;
-    private final Graph graph;
+    private static final AtomicInteger id_count = new AtomicInteger();
+    private long stepCount;
+    private final CompactGraph cg;
     private final Node target;
+    /** Numbers of the edges of this solution in {@link #cg}. */
+    private final int[] edges;
     private final int id;
 
-    public Solution(Graph graph, Node target) {
-        this.graph = graph;
+    /** Constructs a solution with a fresh id, consisting of given edge numbers. */
+    Solution(CompactGraph cg, Node target, int[] edges) {
+        this(cg, target, edges, nextId());
+    }
+
+    /** Constructs a solution with a given id, consisting of given edge numbers. */
+    Solution(CompactGraph cg, Node target, int[] edges, int id) {
+        this.cg = cg;
         this.target = target;
-        this.id = id_count;
-        id_count++;
+        this.edges = edges;
+        this.id = id;
+    }
+
+    /** Returns a fresh solution id. */
+    static int nextId() {
+        return id_count.getAndIncrement();
+    }
+
+    @Override
+    public Edge get(int i) {
+        return this.cg.getEdge(this.edges[i]);
+    }
+
+    @Override
+    public int size() {
+        return this.edges.length;
+    }
+
+    /** Returns the number of the {@code i}th edge in the compact graph. */
+    int getEdgeIx(int i) {
+        return this.edges[i];
+    }
+
+    CompactGraph getCompactGraph() {
+        return this.cg;
+    }
+
+    @Override
+    public Node getProduct() {
+        return this.target;
+    }
+
+    @Override
+    public Edge getEdge(int i) {
+        return get(i);
+    }
+
+    @Override
+    public Solution toSolution() {
+        return this;
     }
 
     public int getId() {
         return this.id;
     }
 
-    public int getStepCount() {
+    @Override
+    public long getStepCount() {
         return this.stepCount;
     }
 
-    public void setStepCount(int stepCount) {
+    public void setStepCount(long stepCount) {
         this.stepCount = stepCount;
     }
 
@@ -94,48 +149,20 @@ public class Solution extends ArrayList<Edge> {
 	}
 
     public String getName() {
-        return this.graph.getName() + "-" + this.target.name() + "-" + this.id;
+        return this.cg.getName() + "-" + this.target.name() + "-" + this.id;
     }
 
+    /** Returns the DOT rendering of this solution. */
     public String toDot() {
-        var result = new StringBuilder();
-        var nodes = new HashSet<Node>();
-        stream().map(Edge::source).forEach(nodes::addAll);
-        stream().map(Edge::target).forEach(nodes::add);
-        result.append("digraph \"" + getName() + "\" {\n");
-        result.append("node [style=filled,color=gold3,fillcolor=gold1,shape=box] \n");
-        result.append("edge [color=gold3] \n");
-        nodes.stream().map(Solution::nodeLine).forEach(result::append);
-        stream().map(Solution::edgeLines).forEach(result::append);
-        result.append("}");
-        return result.toString();
+        return DotExporter.toDot(getName(), this);
     }
 
+    /** Saves the DOT rendering of this solution in the {@code dots} directory. */
     public void saveDot() {
-        File temp;
-        try {
-            temp = new File(DOT_DIR + FILE_SEP + getName() + ".dot");
-            var fout = new FileWriter(temp);
-            fout.write(toDot());
-            fout.close();
-        } catch (Exception e) {
+        try (var exporter = DotExporter.open(Path.of(DOT_DIR, getName() + ".dot"))) {
+            exporter.write(getName(), this);
+        } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
         }
     }
-
-    static private String nodeLine(Node node) {
-        return String.format("\"%s\" [color=deepskyblue3,fillcolor=deepskyblue1,shape=ellipse]%n", node.name());
-    }
-
-    static private String edgeLines(Edge edge) {
-        var result = new StringBuilder();
-        result.append(String.format("\"%s\" [height=0,width=0] %n", edge.name()));
-        for (var i = 0; i < edge.source().size(); i++) {
-            result.append(
-                    String.format("\"%s\" -> \"%s\" [headlabel=\"%s\"]%n", edge.source().get(i).name(),
-                    edge.name(), i));
-        }
-        result.append(String.format("\"%s\" -> \"%s\"%n", edge.name(), edge.target().name()));
-        return result.toString();
-    }
 }
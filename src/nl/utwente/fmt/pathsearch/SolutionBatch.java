@@ -0,0 +1,184 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact list of solutions of a single product. Consecutive solutions of a
+ * search tend to share a long prefix of edges; every solution is therefore
+ * stored as the length of the prefix it shares with its predecessor, followed
+ * by the numbers of its remaining edges. Every {@link #KEYFRAME_INTERVAL}th
+ * solution is stored in full, so that random access only has to decode a
+ * bounded number of solutions. Solutions are materialised on access.
+ * @author Arend Rensink
+ */
+public class SolutionBatch extends AbstractList<Solution> {
+    /** Number of solutions between two solutions that are stored in full. */
+    private static final int KEYFRAME_INTERVAL = 64;
+
+    private final CompactGraph cg;
+    private final Node product;
+    /**
+     * Encoded solutions; each one consists of the shared prefix length, the
+     * suffix length and the suffix edge numbers.
+     */
+    private int[] data = new int[1024];
+    private int dataSize;
+    /** Start of each solution in {@link #data}. */
+    private int[] start = new int[64];
+    private int[] ids = new int[64];
+    private long[] stepCounts = new long[64];
+    private int size;
+    /** Edge numbers of the last solution added. */
+    private int[] last = new int[16];
+    private int lastSize;
+
+    public SolutionBatch(CompactGraph cg, Node product) {
+        this.cg = cg;
+        this.product = product;
+    }
+
+    public Node getProduct() {
+        return this.product;
+    }
+
+    /** Adds a solution, which should be one of the same compact graph and product. */
+    @Override
+    public boolean add(Solution solution) {
+        if (solution.getCompactGraph() != this.cg || !solution.getProduct().equals(this.product)) {
+            throw new IllegalArgumentException(String.format("Solution %s does not belong to this batch", solution.getName()));
+        }
+        var edges = new int[solution.size()];
+        for (var i = 0; i < edges.length; i++) {
+            edges[i] = solution.getEdgeIx(i);
+        }
+        add(edges, edges.length, solution.getId(), solution.getStepCount());
+        return true;
+    }
+
+    /** Adds the current solution of a search instance, without materialising it. */
+    void add(MySearchInstance instance, SolutionView view) {
+        var edges = new int[view.size()];
+        for (var i = 0; i < edges.length; i++) {
+            edges[i] = instance.getSolutionEdge(i);
+        }
+        add(edges, edges.length, Solution.nextId(), view.getStepCount());
+    }
+
+    private void add(int[] edges, int length, int id, long stepCount) {
+        var prefix = 0;
+        if (this.size % KEYFRAME_INTERVAL != 0) {
+            var max = Math.min(length, this.lastSize);
+            while (prefix < max && this.last[prefix] == edges[prefix]) {
+                prefix++;
+            }
+        }
+        if (this.size == this.start.length) {
+            var capacity = 2 * this.size;
+            this.start = Arrays.copyOf(this.start, capacity);
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.stepCounts = Arrays.copyOf(this.stepCounts, capacity);
+        }
+        var needed = this.dataSize + 2 + length - prefix;
+        if (needed > this.data.length) {
+            this.data = Arrays.copyOf(this.data, Math.max(needed, 2 * this.data.length));
+        }
+        this.start[this.size] = this.dataSize;
+        this.ids[this.size] = id;
+        this.stepCounts[this.size] = stepCount;
+        this.size++;
+        this.data[this.dataSize++] = prefix;
+        this.data[this.dataSize++] = length - prefix;
+        System.arraycopy(edges, prefix, this.data, this.dataSize, length - prefix);
+        this.dataSize += length - prefix;
+        if (this.last.length < length) {
+            this.last = Arrays.copyOf(this.last, Math.max(length, 2 * this.last.length));
+        }
+        System.arraycopy(edges, prefix, this.last, prefix, length - prefix);
+        this.lastSize = length;
+    }
+
+    @Override
+    public Solution get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        var decoder = new Decoder(index - index % KEYFRAME_INTERVAL);
+        while (decoder.index < index) {
+            decoder.skip();
+        }
+        return decoder.decode();
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /** Decodes the solutions in order, rather than starting at a keyframe for each of them. */
+    @Override
+    public Iterator<Solution> iterator() {
+        return new Iterator<>() {
+            private final Decoder decoder = new Decoder(0);
+
+            @Override
+            public boolean hasNext() {
+                return this.decoder.index < SolutionBatch.this.size;
+            }
+
+            @Override
+            public Solution next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.decoder.decode();
+            }
+        };
+    }
+
+    /** Returns the number of edge numbers stored for all solutions together. */
+    public int getEncodedSize() {
+        return this.dataSize;
+    }
+
+    /** Sequential decoder of the solutions, starting at a keyframe. */
+    private class Decoder {
+        Decoder(int index) {
+            this.index = index;
+        }
+
+        /** Decodes the solution at {@link #index}, and moves on to the next. */
+        Solution decode() {
+            var id = SolutionBatch.this.ids[this.index];
+            var stepCount = SolutionBatch.this.stepCounts[this.index];
+            var length = skip();
+            var result = new Solution(SolutionBatch.this.cg, SolutionBatch.this.product, Arrays.copyOf(this.edges, length),
+                    id);
+            result.setStepCount(stepCount);
+            return result;
+        }
+
+        /**
+         * Decodes the edge numbers of the solution at {@link #index}, and moves on
+         * to the next.
+         * @return the number of edges of the decoded solution
+         */
+        int skip() {
+            var pos = SolutionBatch.this.start[this.index];
+            var prefix = SolutionBatch.this.data[pos];
+            var suffix = SolutionBatch.this.data[pos + 1];
+            var length = prefix + suffix;
+            if (this.edges.length < length) {
+                this.edges = Arrays.copyOf(this.edges, length);
+            }
+            System.arraycopy(SolutionBatch.this.data, pos + 2, this.edges, prefix, suffix);
+            this.index++;
+            return length;
+        }
+
+        private int index;
+        private int[] edges = new int[16];
+    }
+}
@@ -0,0 +1,106 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of counting the solutions of a product: the number of solutions, the
+ * number of search steps, and the number of solutions of each size. If the
+ * search was stopped by one of its limits, the count is partial, as indicated
+ * by its status.
+ * @author Arend Rensink
+ */
+public class SolutionCount {
+    private final Node product;
+    private long solutionCount;
+    private long stepCount;
+    /** Number of solutions, indexed by their size. */
+    private long[] sizeCounts;
+    private SearchStatus status = SearchStatus.COMPLETE;
+
+    public SolutionCount(Node product) {
+        this.product = product;
+        this.sizeCounts = new long[16];
+    }
+
+    public Node getProduct() {
+        return this.product;
+    }
+
+    public long getSolutionCount() {
+        return this.solutionCount;
+    }
+
+    public long getStepCount() {
+        return this.stepCount;
+    }
+
+    /** Returns the status of the counting search; unless this is {@link SearchStatus#COMPLETE}, the count is partial. */
+    public SearchStatus getStatus() {
+        return this.status;
+    }
+
+    void setStatus(SearchStatus status) {
+        this.status = status;
+    }
+
+    /** Returns the number of solutions of a given size. */
+    public long getSizeCount(int size) {
+        return size < this.sizeCounts.length ? this.sizeCounts[size] : 0;
+    }
+
+    /** Returns the size histogram, as a mapping from sizes to the (non-zero) number of solutions of that size. */
+    public Map<Integer, Long> getSizeHistogram() {
+        var result = new TreeMap<Integer, Long>();
+        for (var size = 0; size < this.sizeCounts.length; size++) {
+            if (this.sizeCounts[size] > 0) {
+                result.put(size, this.sizeCounts[size]);
+            }
+        }
+        return result;
+    }
+
+    /** Counts a solution of a given size. */
+    void addSolution(int size) {
+        addSolutions(size, 1);
+    }
+
+    /** Counts a given number of solutions of a given size. */
+    void addSolutions(int size, long count) {
+        if (size >= this.sizeCounts.length) {
+            this.sizeCounts = Arrays.copyOf(this.sizeCounts, Math.max(size + 1, 2 * this.sizeCounts.length));
+        }
+        this.sizeCounts[size] += count;
+        this.solutionCount += count;
+    }
+
+    void addSteps(long steps) {
+        this.stepCount += steps;
+    }
+
+    /** Adds the counts of another (partial) count to this one. */
+    void addAll(SolutionCount other) {
+        if (other.sizeCounts.length > this.sizeCounts.length) {
+            this.sizeCounts = Arrays.copyOf(this.sizeCounts, other.sizeCounts.length);
+        }
+        for (var size = 0; size < other.sizeCounts.length; size++) {
+            this.sizeCounts[size] += other.sizeCounts[size];
+        }
+        this.solutionCount += other.solutionCount;
+        this.stepCount += other.stepCount;
+        if (other.status != SearchStatus.COMPLETE) {
+            this.status = other.status;
+        }
+    }
+
+    @Override
+    public String toString() {
+        var result = String.format("%s solutions for %s (%s search steps), sizes %s", this.solutionCount, this.product,
+                this.stepCount, getSizeHistogram());
+        if (this.status != SearchStatus.COMPLETE) {
+            result += String.format(" (partial: %s)", this.status);
+        }
+        return result;
+    }
+}
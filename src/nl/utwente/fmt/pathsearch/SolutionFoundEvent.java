@@ -0,0 +1,38 @@
+package nl.utwente.fmt.pathsearch;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event recording that a search instance has found a solution.
+ * @author Arend Rensink
+ */
+@Name("nl.utwente.fmt.pathsearch.SolutionFound")
+@Label("Solution Found")
+@Category("Path Search")
+@StackTrace(false)
+class SolutionFoundEvent extends Event {
+    @Label("Product")
+    String product;
+
+    @Label("Size")
+    int size;
+
+    @Label("Steps")
+    @Description("Search steps taken since the previous solution")
+    long steps;
+
+    @Label("Backtracks")
+    @Description("Backtracks since the previous solution")
+    long backtracks;
+
+    @Label("Search Time")
+    @Description("Time spent searching since the previous solution")
+    @Timespan(Timespan.NANOSECONDS)
+    long searchTime;
+}
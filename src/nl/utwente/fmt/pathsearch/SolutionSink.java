@@ -0,0 +1,458 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Sink that persists solutions as they are found, for instance by passing it
+ * to {@link Search#forEachSolution(Node, Consumer)}. Solutions are encoded
+ * into buffers on the calling thread, without allocating; full buffers are
+ * written to a channel by a background thread, so that the search only waits
+ * for the disk if all buffers are full. The sink must be closed to write the
+ * last buffer; errors of the writer are reported by the next call, or at the
+ * latest by {@link #close()}. Sinks are thread-safe: concurrent calls, such as
+ * those of a {@link ParallelSearch}, are serialised, so the solutions are
+ * written in the order in which the calls acquire the sink.
+ * <p>
+ * There are two formats:
+ * <ul>
+ * <li>{@link Format#NDJSON}: one JSON object per line, with the product, the
+ * size, the step count and the edge names of a solution;
+ * <li>{@link Format#BINARY}: a header ({@link #MAGIC} and {@link #VERSION})
+ * followed by records, each starting with a tag byte. Edges are numbered in
+ * the order in which they first occur; their names are defined by an
+ * {@link #EDGE} record just before that. A {@link #PRODUCT} record gives the
+ * product of the solutions that follow it. A {@link #SOLUTION} record consists
+ * of the number of edges shared with the previous solution (as a prefix), the
+ * number of remaining edges, and their numbers. All numbers are unsigned
+ * LEB128 varints, and all names are a varint length followed by UTF-8 bytes.
+ * Such files can be read by {@link #readBinary(Path, BiConsumer)}.
+ * </ul>
+ * @author Arend Rensink
+ */
+public class SolutionSink implements Consumer<SolutionView>, Closeable {
+    /** Formats of a sink. */
+    public enum Format {
+        BINARY, NDJSON;
+    }
+
+    /** Magic number at the start of a binary solution file. */
+    public static final int MAGIC = 0x50534f4c;
+    /** Current version of the binary format. */
+    public static final int VERSION = 1;
+    /** Tag of a binary record defining the name of the next edge number. */
+    public static final int EDGE = 1;
+    /** Tag of a binary record setting the product of the following solutions. */
+    public static final int PRODUCT = 2;
+    /** Tag of a binary solution record. */
+    public static final int SOLUTION = 3;
+
+    /** Size of every buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Number of buffers, including the one being filled. */
+    private static final int BUFFER_COUNT = 4;
+    /** Marker in {@link #full} telling the writer to stop. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final Format format;
+    private final WritableByteChannel channel;
+    /** Buffers to be written by the writer thread, in order. */
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+    /** Buffers that have been written and can be reused. */
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final Thread writer;
+    /** The first error of the writer thread, if any. */
+    private volatile IOException failure;
+    /** The buffer being filled. */
+    private ByteBuffer buffer;
+    /** Encoding of the solution being added, before it is copied into {@link #buffer}. */
+    private byte[] scratch = new byte[1024];
+    private int scratchSize;
+    /** Number of the solutions added so far. */
+    private long solutionCount;
+    private boolean closed;
+    /** Binary format: numbers of the edges seen so far. */
+    private final Map<Edge, Integer> edgeIds = new HashMap<>();
+    /**
+     * Binary format: numbers of the edge objects seen so far. Searches reuse
+     * their edge objects, and identity lookup is much cheaper than hashing edges.
+     */
+    private final Map<Edge, Integer> edgeObjectIds = new IdentityHashMap<>();
+    /** Binary format: product of the last solution. */
+    private Node lastProduct;
+    /** Binary format: edge numbers of the last solution. */
+    private int[] last = new int[16];
+    private int lastSize;
+    /** Binary format: edge numbers of the solution being added. */
+    private int[] ids = new int[16];
+
+    /** Constructs a sink writing to a given channel, which is closed when the sink is. */
+    public SolutionSink(WritableByteChannel channel, Format format) {
+        this.format = format;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        for (var i = 1; i < BUFFER_COUNT; i++) {
+            this.free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+        this.writer = new Thread(this::write, "solution-sink-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        if (format == Format.BINARY) {
+            writeInt(MAGIC);
+            writeInt(VERSION);
+            flushScratch();
+        }
+    }
+
+    /** Opens a sink writing to a given file, which is created or truncated. */
+    public static SolutionSink open(Path file, Format format) throws IOException {
+        return new SolutionSink(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), format);
+    }
+
+    public Format getFormat() {
+        return this.format;
+    }
+
+    /** Returns the number of solutions added so far. */
+    public synchronized long getSolutionCount() {
+        return this.solutionCount;
+    }
+
+    /**
+     * Adds a solution to the sink. The view is only used during the call.
+     * @throws UncheckedIOException if the writer thread failed
+     * @throws IllegalStateException if the sink is closed
+     */
+    @Override
+    public synchronized void accept(SolutionView solution) {
+        if (this.closed) {
+            throw new IllegalStateException("Solution sink is closed");
+        }
+        // discard the remains of a call that failed
+        this.scratchSize = 0;
+        if (this.format == Format.BINARY) {
+            encodeBinary(solution);
+        } else {
+            encodeJson(solution);
+        }
+        flushScratch();
+        this.solutionCount++;
+    }
+
+    private void encodeBinary(SolutionView solution) {
+        var product = solution.getProduct();
+        if (!product.equals(this.lastProduct)) {
+            writeByte(PRODUCT);
+            writeName(product.name());
+            this.lastProduct = product;
+            // do not share a prefix with a solution of another product
+            this.lastSize = 0;
+        }
+        var size = solution.size();
+        if (this.ids.length < size) {
+            this.ids = new int[Math.max(size, 2 * this.ids.length)];
+            this.last = Arrays.copyOf(this.last, this.ids.length);
+        }
+        for (var i = 0; i < size; i++) {
+            var edge = solution.getEdge(i);
+            var id = this.edgeObjectIds.get(edge);
+            if (id == null) {
+                id = this.edgeIds.get(edge);
+                if (id == null) {
+                    id = this.edgeIds.size();
+                    this.edgeIds.put(edge, id);
+                    writeByte(EDGE);
+                    writeName(edge.name());
+                }
+                this.edgeObjectIds.put(edge, id);
+            }
+            this.ids[i] = id;
+        }
+        var prefix = 0;
+        var max = Math.min(size, this.lastSize);
+        while (prefix < max && this.last[prefix] == this.ids[prefix]) {
+            prefix++;
+        }
+        writeByte(SOLUTION);
+        writeVarint(prefix);
+        writeVarint(size - prefix);
+        for (var i = prefix; i < size; i++) {
+            writeVarint(this.ids[i]);
+        }
+        System.arraycopy(this.ids, prefix, this.last, prefix, size - prefix);
+        this.lastSize = size;
+    }
+
+    private void encodeJson(SolutionView solution) {
+        writeAscii("{\"product\":");
+        writeJsonString(solution.getProduct().name());
+        writeAscii(",\"size\":");
+        writeDecimal(solution.size());
+        writeAscii(",\"steps\":");
+        writeDecimal(solution.getStepCount());
+        writeAscii(",\"edges\":[");
+        for (var i = 0; i < solution.size(); i++) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            writeJsonString(solution.getEdge(i).name());
+        }
+        writeAscii("]}\n");
+    }
+
+    private void writeByte(int b) {
+        reserve(1);
+        this.scratch[this.scratchSize++] = (byte) b;
+    }
+
+    /** Makes sure that the scratch array has room for a given number of bytes. */
+    private void reserve(int count) {
+        if (this.scratchSize + count > this.scratch.length) {
+            this.scratch = Arrays.copyOf(this.scratch, Math.max(this.scratchSize + count, 2 * this.scratch.length));
+        }
+    }
+
+    private void writeInt(int value) {
+        for (var shift = 24; shift >= 0; shift -= 8) {
+            writeByte(value >>> shift);
+        }
+    }
+
+    /** Writes an unsigned LEB128 varint. */
+    private void writeVarint(int value) {
+        while ((value & ~0x7f) != 0) {
+            writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /** Writes a name as its UTF-8 length, followed by its UTF-8 bytes. */
+    private void writeName(String name) {
+        var bytes = name.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        for (var b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    /** Writes a string that is known to consist of ASCII characters. */
+    private void writeAscii(String text) {
+        for (var i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    /** Writes a non-negative number in decimal. */
+    private void writeDecimal(long value) {
+        var digits = 1;
+        for (var v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        reserve(digits);
+        this.scratchSize += digits;
+        // fill in the digits backwards
+        for (var i = this.scratchSize - 1; i >= this.scratchSize - digits; i--) {
+            this.scratch[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /** Writes a string as a JSON string literal, escaping all non-ASCII characters. */
+    private void writeJsonString(String value) {
+        writeByte('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writeByte('\\');
+                writeByte(c);
+            } else if (c >= ' ' && c < 0x7f) {
+                writeByte(c);
+            } else {
+                writeAscii("\\u");
+                for (var shift = 12; shift >= 0; shift -= 4) {
+                    writeByte(Character.forDigit((c >>> shift) & 0xf, 16));
+                }
+            }
+        }
+        writeByte('"');
+    }
+
+    /** Copies the scratch bytes into the buffers, handing full buffers to the writer. */
+    private void flushScratch() {
+        var pos = 0;
+        while (pos < this.scratchSize) {
+            if (!this.buffer.hasRemaining()) {
+                handOff();
+            }
+            var count = Math.min(this.buffer.remaining(), this.scratchSize - pos);
+            this.buffer.put(this.scratch, pos, count);
+            pos += count;
+        }
+        this.scratchSize = 0;
+    }
+
+    /** Hands the current buffer to the writer, and takes a free one. */
+    private void handOff() {
+        checkFailure();
+        try {
+            this.full.put(this.buffer);
+            this.buffer = this.free.take();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing solutions"));
+        }
+    }
+
+    private void checkFailure() {
+        if (this.failure != null) {
+            throw new UncheckedIOException(this.failure);
+        }
+    }
+
+    /** Main loop of the writer thread. */
+    private void write() {
+        try {
+            while (true) {
+                var next = this.full.take();
+                if (next == END) {
+                    break;
+                }
+                next.flip();
+                try {
+                    while (this.failure == null && next.hasRemaining()) {
+                        this.channel.write(next);
+                    }
+                } catch (Throwable exc) {
+                    // keep recycling buffers, so that the sink does not block
+                    this.failure = exc instanceof IOException io ? io : new IOException("Solution writer failed", exc);
+                }
+                next.clear();
+                this.free.put(next);
+            }
+        } catch (InterruptedException exc) {
+            this.failure = new InterruptedIOException("Solution writer interrupted");
+        }
+    }
+
+    /**
+     * Writes the remaining solutions, stops the writer thread and closes the
+     * channel. Closing a closed sink has no effect.
+     * @throws IOException if writing any of the solutions failed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            if (this.buffer.position() > 0) {
+                this.full.put(this.buffer);
+            }
+            this.full.put(END);
+            this.writer.join();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            this.writer.interrupt();
+            throw new InterruptedIOException("Interrupted while closing solution sink");
+        } finally {
+            this.channel.close();
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * Reads a file in the binary format, passing the product and the edge names
+     * of every solution to a given action, in order.
+     * @throws IOException if the file cannot be read or is not in the binary format
+     */
+    public static void readBinary(Path file, BiConsumer<Node, List<String>> action) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(String.format("File %s is not a binary solution file", file));
+            }
+            var version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported solution file version %s in %s", version, file));
+            }
+            var names = new ArrayList<String>();
+            Node product = null;
+            var edges = new ArrayList<String>();
+            int tag;
+            while ((tag = in.read()) >= 0) {
+                switch (tag) {
+                case EDGE -> names.add(readName(in));
+                case PRODUCT -> {
+                    product = new Node(readName(in));
+                    edges.clear();
+                }
+                case SOLUTION -> {
+                    var prefix = readVarint(in);
+                    var suffix = readVarint(in);
+                    if (product == null || prefix > edges.size()) {
+                        throw new IOException(String.format("Corrupt solution file %s", file));
+                    }
+                    edges.subList(prefix, edges.size()).clear();
+                    for (var i = 0; i < suffix; i++) {
+                        var id = readVarint(in);
+                        if (id >= names.size()) {
+                            throw new IOException(String.format("Undefined edge %s in %s", id, file));
+                        }
+                        edges.add(names.get(id));
+                    }
+                    action.accept(product, List.copyOf(edges));
+                }
+                default -> throw new IOException(String.format("Unknown record tag %s in %s", tag, file));
+                }
+            }
+        }
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        var result = 0;
+        for (var shift = 0; shift < 35; shift += 7) {
+            var b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String readName(DataInputStream in) throws IOException {
+        var bytes = new byte[readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,24 @@
+package nl.utwente.fmt.pathsearch;
+
+/**
+ * Read-only view of a solution found by a search. A view is reused by the
+ * search, and is only valid until the search continues; use
+ * {@link #toSolution()} to keep a solution.
+ * @author Arend Rensink
+ */
+public interface SolutionView {
+    /** Returns the product derived by this solution. */
+    Node getProduct();
+
+    /** Returns the number of edges in this solution. */
+    int size();
+
+    /** Returns the {@code i}th edge of this solution. */
+    Edge getEdge(int i);
+
+    /** Returns the number of search steps taken to find this solution. */
+    long getStepCount();
+
+    /** Returns a copy of this solution that stays valid. */
+    Solution toSolution();
+}
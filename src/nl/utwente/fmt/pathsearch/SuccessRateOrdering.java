@@ -0,0 +1,54 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Edge ordering that learns from the searches that use it. The success rate
+ * of an edge is the fraction of the recorded solutions making its target in
+ * which the edge is the maker, smoothed so that edges without history get
+ * rate 1/2; edges with a higher success rate come first. Solutions are
+ * recorded as they are found; the order of a search is fixed when it starts,
+ * so the history only affects later searches. Instances are thread-safe, and
+ * can be shared by concurrent searches.
+ * @author Arend Rensink
+ */
+public class SuccessRateOrdering implements EdgeOrdering {
+    /** Number of recorded solutions containing each edge. */
+    private final Map<Edge, Long> edgeCounts = new HashMap<>();
+    /** Number of recorded solutions making each node. */
+    private final Map<Node, Long> nodeCounts = new HashMap<>();
+
+    @Override
+    public boolean isAdaptive() {
+        return true;
+    }
+
+    @Override
+    public synchronized void solutionFound(SolutionView solution) {
+        for (var i = 0; i < solution.size(); i++) {
+            var edge = solution.getEdge(i);
+            this.edgeCounts.merge(edge, 1L, Long::sum);
+            this.nodeCounts.merge(edge.target(), 1L, Long::sum);
+        }
+    }
+
+    /** Returns the current success rate of an edge. */
+    public synchronized double getSuccessRate(Edge edge) {
+        var successes = this.edgeCounts.getOrDefault(edge, 0L);
+        var trials = this.nodeCounts.getOrDefault(edge.target(), 0L);
+        return (successes + 1.0) / (trials + 2.0);
+    }
+
+    /** Compares edges by decreasing success rate at the time of the call, then in the default order. */
+    @Override
+    public synchronized Comparator<Edge> getComparator(GraphFacade gf) {
+        // take a snapshot, so that the order cannot change while it is used
+        var rates = new HashMap<Edge, Double>();
+        for (var edge : gf.getEdges()) {
+            rates.put(edge, getSuccessRate(edge));
+        }
+        return Comparator.<Edge>comparingDouble(e -> -rates.get(e)).thenComparing(GraphFacade::compareEdges);
+    }
+}
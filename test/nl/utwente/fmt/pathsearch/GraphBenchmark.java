@@ -0,0 +1,91 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opencsv.exceptions.CsvException;
+
+/**
+ * JMH benchmarks for the preparation stages of the search: reading a graph,
+ * pruning it, and computing the derived maps of the facade. See the README for
+ * how to run them.
+ * @author Arend Rensink
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBenchmark {
+    static final String FILE_SEP = System.getProperty("file.separator");
+    static final String GRAPH_HOME = System.getProperty("user.dir") + FILE_SEP + "graphs-0-14";
+
+    @Param({ "helloworld", "kevinLarge", "kevinLarge2", "extratest", "large_0", "large_1", "large_2", "large_3",
+            "large_4", "large_5", "large_6", "large_7", "large_8", "large_9", "large_10", "large_11", "large_12",
+            "large_13", "large_14" })
+    public String graph;
+
+    private String filename;
+    /** The graph as read, with the givens of {@link SearchGraph}. */
+    private Graph original;
+    /** The pruned graph. */
+    private Graph pruned;
+    /** Fresh facade of the pruned graph, with only its out-edge map computed. */
+    private GraphFacade facade;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, CsvException {
+        MySearch.LOG = false;
+        this.filename = GRAPH_HOME + FILE_SEP + this.graph + ".csv";
+        this.original = SearchGraph.enhance(new CSVGraphReader(this.filename).run());
+        this.pruned = MySearch.pruneGraph(new GraphFacade(this.original)).getGraph();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpFacade() {
+        this.facade = new GraphFacade(this.pruned);
+        this.facade.getOutEdgeMap();
+    }
+
+    @Benchmark
+    public Graph read() throws IOException, CsvException {
+        return new CSVGraphReader(this.filename).run();
+    }
+
+    @Benchmark
+    public GraphFacade prune() {
+        return MySearch.pruneGraph(new GraphFacade(this.original));
+    }
+
+    @Benchmark
+    public Map<Node, Set<Node>> preMaps() {
+        return this.facade.getNodePreMap();
+    }
+
+    @Benchmark
+    public Map<Node, Integer> depthMaps() {
+        return this.facade.getNodeDepthMap();
+    }
+
+    @Benchmark
+    public Map<Node, List<Edge>> inEdgeMap() {
+        return this.facade.getInEdgeMap();
+    }
+}
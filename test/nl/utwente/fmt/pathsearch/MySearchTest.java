@@ -2,18 +2,50 @@ package nl.utwente.fmt.pathsearch;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
 import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvMalformedLineException;
 
 public class MySearchTest {
     private static final String USER_DIR = System.getProperty("user.dir");
     private static final String FILE_SEP = System.getProperty("file.separator");
     private static final String GRAPH_HOME = USER_DIR + FILE_SEP + "graphs-0-14";
+    /** Product of kevinLarge2 used in most tests; see {@link #readKevinLarge2()}. */
+    private static final Node KL2_PRODUCT = new Node("wZNHUjQJZm");
+    /** Number of solutions of {@link #KL2_PRODUCT} in kevinLarge2. */
+    private static final int KL2_SOLUTION_COUNT = 783460;
+    /** Solutions of P in the {@link #conflictGraph()}, in search order. */
+    private static final List<List<String>> CONFLICT_SOLUTIONS = List.of(List.of("p", "a2", "GEN-G"),
+            List.of("q", "GEN-G"));
 
     @Test
     public void testHelloWorld() {
@@ -40,10 +72,8 @@ public class MySearchTest {
 
     @Test
     public void testKevinLarge2() {
-        var g = readGraph("kevinLarge2");
-        g.addGenerator("LemWqhRXIa");
-        g.addGenerator("nurXcDYLrM");
-        var it = new MySearch(g).search(new Node("wZNHUjQJZm"));
+        var g = readKevinLarge2();
+        var it = new MySearch(g).search(KL2_PRODUCT);
         var i = 0;
         while (it.hasNext()) {
             var sol = it.next();
@@ -53,6 +83,796 @@ public class MySearchTest {
         finalDot(i);
     }
 
+    @Test
+    public void testParallelKevinLarge2() {
+        var g = readKevinLarge2();
+        var product = KL2_PRODUCT;
+        var expected = new HashSet<List<Edge>>();
+        new MySearch(g).search(product).forEachRemaining(s -> expected.add(List.copyOf(s)));
+        var actual = ConcurrentHashMap.<List<Edge>>newKeySet();
+        var parallel = new ParallelSearch(g);
+        parallel.forEachSolution(product, s -> actual.add(List.copyOf(s.toSolution())));
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), parallel.count(product).getSolutionCount());
+    }
+
+    @Test
+    public void testCountKevinLarge2() {
+        var g = readKevinLarge2();
+        var product = KL2_PRODUCT;
+        var count = new MySearch(g).count(product);
+        assertEquals(KL2_SOLUTION_COUNT, count.getSolutionCount());
+        var total = count.getSizeHistogram().values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(KL2_SOLUTION_COUNT, total);
+    }
+
+    @Test
+    public void testBatchKevinLarge2() {
+        var g = readKevinLarge2();
+        var product = KL2_PRODUCT;
+        var search = new MySearch(g);
+        var batch = search.collect(product);
+        var solutions = search.search(product);
+        for (var solution : batch) {
+            assertEquals(solutions.next(), solution);
+        }
+        assertFalse(solutions.hasNext());
+        assertEquals(batch.get(1000), List.copyOf(batch.get(1000)));
+        assertTrue(batch.get(batch.size() - 1).validate(product));
+    }
+
+    @Test
+    public void testMultiTargetKevinLarge() {
+        var g = readGraph("kevinLarge");
+        g.addGenerator("wqiaiyuUwj");
+        var search = new MySearch(g);
+        var products = List.copyOf(search.getGraph().getNodes());
+        var pool = Executors.newFixedThreadPool(4);
+        try {
+            var counts = new BatchSearch(search, pool).countAll(products);
+            assertEquals(products, List.copyOf(counts.keySet()));
+            for (var product : products) {
+                assertEquals(search.count(product).getSolutionCount(), counts.get(product).getSolutionCount());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testServer() throws IOException {
+        var g = readGraph("helloworld");
+        g.addGenerator("domain.CustomerInformation.CustomerId");
+        var server = new SearchServer(0);
+        server.addGraph("helloworld", new MySearch(g));
+        server.start();
+        try {
+            var url = "http://localhost:" + server.getPort() + "/search?graph=helloworld&product=domain.Savings.SavingsMeResponse";
+            try (var in = new URL(url).openStream()) {
+                var lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+                assertEquals(1, lines.length);
+                assertTrue(lines[0].startsWith("{\"size\":4,"));
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testServerTimeout() throws IOException {
+        var g = readGraph("helloworld");
+        g.addGenerator("domain.CustomerInformation.CustomerId");
+        var server = new SearchServer(0);
+        assertEquals(SearchServer.DEFAULT_TIMEOUT, server.getDefaultTimeout());
+        server.setDefaultTimeout(Duration.ZERO);
+        server.addGraph("helloworld", new MySearch(g));
+        server.start();
+        try {
+            var url = "http://localhost:" + server.getPort() + "/count?graph=helloworld&product=domain.Savings.SavingsMeResponse";
+            try (var in = new URL(url).openStream()) {
+                var response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(response.contains("\"status\":\"DEADLINE_EXCEEDED\""));
+            }
+            try (var in = new URL(url + "&timeout=60000").openStream()) {
+                var response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(response.contains("\"status\":\"COMPLETE\",\"solutions\":1,"));
+            }
+            var search = "http://localhost:" + server.getPort()
+                    + "/search?graph=helloworld&product=domain.Savings.SavingsMeResponse&order=size";
+            try (var in = new URL(search).openStream()) {
+                var response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertEquals("{\"status\":\"DEADLINE_EXCEEDED\"}\n", response);
+            }
+            try (var in = new URL(search + "&timeout=60000&steps=1").openStream()) {
+                var response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertEquals("{\"status\":\"STEP_LIMIT_REACHED\"}\n", response);
+            }
+            try (var in = new URL(search + "&timeout=60000").openStream()) {
+                var response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(response.startsWith("{\"size\":4,"));
+                assertEquals(1, response.split("\n").length);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testBestFirstLimits() {
+        var search = new BestFirstSearch(new MySearch(conflictGraph()));
+        var product = new Node("P");
+        var complete = search.search(product, Integer.MAX_VALUE, SearchOptions.NONE);
+        assertEquals(List.of(CONFLICT_SOLUTIONS.get(1), CONFLICT_SOLUTIONS.get(0)), edgeNames(complete));
+        assertEquals(SearchStatus.COMPLETE, complete.getStatus());
+        var limited = search.search(product, Integer.MAX_VALUE, SearchOptions.NONE.withMaxSteps(2));
+        assertFalse(limited.hasNext());
+        assertEquals(SearchStatus.STEP_LIMIT_REACHED, limited.getStatus());
+        assertEquals(2, limited.getStepCount());
+        var token = new CancellationToken();
+        token.cancel();
+        var cancelled = search.search(product, Integer.MAX_VALUE, SearchOptions.NONE.withCancellation(token));
+        assertFalse(cancelled.hasNext());
+        assertEquals(SearchStatus.CANCELLED, cancelled.getStatus());
+        var late = search.search(product, Integer.MAX_VALUE, SearchOptions.NONE.withDeadline(Instant.now()));
+        assertFalse(late.hasNext());
+        assertEquals(SearchStatus.DEADLINE_EXCEEDED, late.getStatus());
+    }
+
+    @Test
+    public void testMetricsKevinLarge2() {
+        var g = readKevinLarge2();
+        var instance = (MySearchInstance) new MySearch(g).search(KL2_PRODUCT);
+        var metrics = instance.enableMetrics();
+        var count = 0;
+        while (instance.hasNext()) {
+            instance.nextView();
+            count++;
+        }
+        assertEquals(count, metrics.getSolutionCount());
+        assertEquals(instance.getStepCount(), metrics.getStepCount());
+        assertEquals(37, metrics.getMaxMadeSize());
+        assertTrue(metrics.getBacktrackCount() > 0);
+        assertTrue(metrics.getMaxSolutionNanos() <= metrics.getSearchNanos());
+    }
+
+    @Test
+    public void testLimitsKevinLarge2() {
+        var g = readKevinLarge2();
+        var search = new MySearch(g);
+        var product = KL2_PRODUCT;
+        var count = search.count(product, SearchOptions.NONE.withMaxSteps(1000));
+        assertEquals(SearchStatus.STEP_LIMIT_REACHED, count.getStatus());
+        assertEquals(1000, count.getStepCount());
+        var token = new CancellationToken();
+        token.cancel();
+        count = search.count(product, SearchOptions.NONE.withCancellation(token));
+        assertEquals(SearchStatus.CANCELLED, count.getStatus());
+        assertEquals(0, count.getSolutionCount());
+        count = search.count(product, SearchOptions.NONE.withTimeout(Duration.ofMinutes(1)));
+        assertEquals(SearchStatus.COMPLETE, count.getStatus());
+        assertEquals(KL2_SOLUTION_COUNT, count.getSolutionCount());
+    }
+
+    @Test
+    public void testCheckpointKevinLarge2() throws IOException {
+        var g = readKevinLarge2();
+        var search = new MySearch(g);
+        var product = KL2_PRODUCT;
+        var instance = search.search(product, SearchOptions.NONE.withMaxSteps(1_000_000));
+        var count = 0;
+        while (instance.hasNext()) {
+            instance.nextView();
+            count++;
+        }
+        assertEquals(SearchStatus.STEP_LIMIT_REACHED, instance.getStatus());
+        var file = Files.createTempFile("checkpoint", ".bin");
+        try {
+            instance.checkpoint(file);
+            var resumed = search.resume(file);
+            while (resumed.hasNext()) {
+                resumed.nextView();
+                count++;
+            }
+            assertEquals(KL2_SOLUTION_COUNT, count);
+            assertEquals(search.count(product).getStepCount(), resumed.getStepCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCheckpointOrdering() throws IOException {
+        var search = new MySearch(conflictGraph());
+        var product = new Node("P");
+        var options = SearchOptions.NONE.withOrdering(EdgeOrdering.BY_PRE_SIZE);
+        var expected = edgeNames(search.search(product, options));
+        var collapsed = search.getCompactGraph(product, EdgeOrdering.BY_DEPTH).getCollapsed();
+        var expectedCollapsed = edgeNames(new MySearchInstance(collapsed, product));
+        var file = Files.createTempFile("checkpoint", ".bin");
+        try {
+            var instance = search.search(product, options);
+            var names = new ArrayList<List<String>>();
+            names.add(instance.next().stream().map(Edge::name).toList());
+            instance.checkpoint(file);
+            names.addAll(edgeNames(search.resume(file)));
+            assertEquals(expected, names);
+            instance = new MySearchInstance(collapsed, product);
+            names.clear();
+            names.add(instance.next().stream().map(Edge::name).toList());
+            instance.checkpoint(file);
+            var resumed = search.resume(file);
+            assertTrue(resumed.getCompactGraph().isCollapsed());
+            names.addAll(edgeNames(resumed));
+            assertEquals(expectedCollapsed, names);
+            // the order of an adaptive ordering depends on its history, which is not saved
+            instance = search.search(product, SearchOptions.NONE.withOrdering(EdgeOrdering.bySuccessRate()));
+            instance.next();
+            try {
+                instance.checkpoint(file);
+                fail();
+            } catch (IllegalArgumentException exc) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCorruptCheckpoint() throws IOException {
+        var search = new MySearch(conflictGraph());
+        var instance = search.search(new Node("P"), SearchOptions.NONE);
+        instance.next();
+        var file = Files.createTempFile("checkpoint", ".bin");
+        try {
+            instance.checkpoint(file);
+            var bytes = Files.readAllBytes(file);
+            for (var length = 0; length < bytes.length; length++) {
+                Files.write(file, Arrays.copyOf(bytes, length));
+                assertResumeFails(search, file);
+            }
+            // the number of maker choices precedes the choices at the end of the file
+            var offset = bytes.length - 4 - 4 * instance.getPrefix().length;
+            for (var count : new int[] { -1, Integer.MAX_VALUE }) {
+                var corrupt = bytes.clone();
+                ByteBuffer.wrap(corrupt, offset, 4).putInt(count);
+                Files.write(file, corrupt);
+                assertResumeFails(search, file);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Checks that resuming from a checkpoint fails with an exception naming the file. */
+    private static void assertResumeFails(MySearch search, Path file) {
+        try {
+            search.resume(file);
+            fail();
+        } catch (IOException exc) {
+            assertTrue(exc.getMessage().contains(file.toString()));
+        }
+    }
+
+    @Test
+    public void testCollapsedClasses() {
+        var g = graph("classes", "P;p1;A", "P;p2;A", "P;p3;B", "P;p4;A", "A;a1;G", "A;a2;G", "B;b;G");
+        g.addGenerator("G");
+        var search = new MySearch(g);
+        var product = new Node("P");
+        var collapsed = search.getCompactGraph(product).getCollapsed();
+        var full = collapsed.getFull();
+        var classes = new ArrayList<List<String>>();
+        var n = collapsed.getNodeIx(product);
+        for (var i = 0; i < collapsed.getInEdgeCount(n); i++) {
+            var e = collapsed.getInEdge(n, i);
+            var members = new ArrayList<String>();
+            for (var j = 0; j < collapsed.getClassSize(e); j++) {
+                members.add(full.getEdge(collapsed.getClassMember(e, j)).name());
+            }
+            classes.add(members);
+        }
+        assertEquals(List.of(List.of("p1", "p2", "p4"), List.of("p3")), classes);
+        assertEquals(search.count(product).getSolutionCount(), search.countCollapsed(product).getSolutionCount());
+    }
+
+    @Test
+    public void testRemoveEqualEdge() {
+        var g = graph("equal", "P;p;A", "P;p;B", "A;a;G", "B;b;G");
+        g.addGenerator("G");
+        var search = new MySearch(g);
+        search.attach();
+        var product = new Node("P");
+        // of the equal edges named p, only the first is searched
+        assertEquals(List.of(List.of("p", "a", "GEN-G")), edgeNames(search.search(product)));
+        g.removeEdge(new Edge(List.of(new Node("A")), "p", product));
+        assertEquals(List.of(List.of("p", "b", "GEN-G")), edgeNames(search.search(product)));
+        g.removeEdge(new Edge(List.of(new Node("B")), "p", product));
+        assertFalse(search.getGraph().getNodes().contains(product));
+        search.detach();
+    }
+
+    @Test
+    public void testLayeredFixpoint() {
+        assertSameFixpoint(conflictGraph());
+        // a random cyclic graph with layers large enough to be processed in parallel
+        var random = new Random(42);
+        var g = new Graph("random");
+        for (var n = 0; n < 1000; n++) {
+            g.addNode("N" + n);
+        }
+        for (var n = 0; n < 10; n++) {
+            g.addGenerator("N" + n);
+        }
+        for (var n = 0; n < 1000; n++) {
+            for (var e = 0; e < 3; e++) {
+                var sources = new ArrayList<String>();
+                for (var s = random.nextInt(3); s >= 0; s--) {
+                    sources.add("N" + random.nextInt(1000));
+                }
+                g.addEdge(sources, "e" + n + "_" + e, "N" + n);
+            }
+        }
+        assertSameFixpoint(g);
+    }
+
+    /** Compares the maps computed by {@link LayeredFixpoint} with those of the worklist algorithm. */
+    private static void assertSameFixpoint(Graph g) {
+        var layered = new LayeredFixpoint(new GraphFacade(g));
+        var preMaps = layered.computePreMaps();
+        // maps computed for the empty graph are updated by the worklist algorithm as edges are added
+        var empty = new Graph(g.getName());
+        var worklist = new GraphFacade(empty).attach();
+        worklist.getNodePreMap();
+        worklist.getNodeDepthMap();
+        g.getNodes().forEach(empty::addNode);
+        g.getEdges().forEach(empty::addEdge);
+        assertEquals(worklist.getNodePreMap(), preMaps.nodePreMap());
+        assertEquals(worklist.getEdgePreMap(), preMaps.edgePreMap());
+        assertEquals(worklist.getNodeDepthMap(), layered.getNodeDepthMap());
+        assertEquals(worklist.getEdgeDepthMap(), layered.getEdgeDepthMap());
+    }
+
+    @Test
+    public void testReaderChunks() throws IOException, CsvException {
+        var file = GRAPH_HOME + FILE_SEP + "helloworld.csv";
+        var expected = new CSVGraphReader(file).run();
+        for (var chunkSize : new long[] { 1, 64, 1000 }) {
+            for (var parallel : new boolean[] { false, true }) {
+                var g = new CSVGraphReader(file).setChunkSize(chunkSize).setParallel(parallel).run();
+                assertEquals(List.copyOf(expected.getNodes()), List.copyOf(g.getNodes()));
+                assertEquals(List.copyOf(expected.getEdges()), List.copyOf(g.getEdges()));
+            }
+        }
+        var malformed = Files.createTempFile("malformed", ".csv");
+        try {
+            // the fifth line of the file lacks an edge name
+            Files.writeString(malformed, "target;edge;sources\nP;p;A\r\nA;a;G\n\nP\nG;g\n");
+            for (var parallel : new boolean[] { false, true }) {
+                try {
+                    new CSVGraphReader(malformed.toString()).setChunkSize(4).setParallel(parallel).run();
+                    fail();
+                } catch (CsvMalformedLineException exc) {
+                    assertEquals(5, exc.getLineNumber());
+                }
+            }
+        } finally {
+            Files.delete(malformed);
+        }
+    }
+
+    @Test
+    public void testNogoods() {
+        var search = new MySearch(conflictGraph());
+        var product = new Node("P");
+        var plain = search.search(product, SearchOptions.NONE.withBackjumping(false));
+        var learning = search.search(product, SearchOptions.NONE.withBackjumping(false).withNogoods(64));
+        assertEquals(CONFLICT_SOLUTIONS, edgeNames(plain));
+        assertEquals(CONFLICT_SOLUTIONS, edgeNames(learning));
+        // the nogood of C, learned under a1, prunes a3 as soon as it finds C
+        assertTrue(learning.getStepCount() < plain.getStepCount());
+    }
+
+    @Test
+    public void testBackjumping() {
+        var search = new MySearch(conflictGraph());
+        var product = new Node("P");
+        var chronological = search.search(product, SearchOptions.NONE.withBackjumping(false));
+        var jumping = search.search(product, SearchOptions.NONE);
+        assertTrue(jumping.isBackjumping());
+        assertEquals(CONFLICT_SOLUTIONS, edgeNames(chronological));
+        assertEquals(CONFLICT_SOLUTIONS, edgeNames(jumping));
+        // when C fails, the search jumps back to A, skipping the makers of X1 and X2
+        assertTrue(jumping.getStepCount() < chronological.getStepCount());
+        var both = search.search(product, SearchOptions.NONE.withNogoods(64));
+        assertEquals(CONFLICT_SOLUTIONS, edgeNames(both));
+        assertTrue(both.getStepCount() <= jumping.getStepCount());
+    }
+
+    @Test
+    public void testCollapsedKevinLarge2() {
+        var g = readKevinLarge2();
+        var search = new MySearch(g);
+        var product = KL2_PRODUCT;
+        var count = search.count(product);
+        var collapsedCount = search.countCollapsed(product);
+        assertEquals(count.getSolutionCount(), collapsedCount.getSolutionCount());
+        assertEquals(count.getSizeHistogram(), collapsedCount.getSizeHistogram());
+        assertTrue(collapsedCount.getStepCount() < count.getStepCount());
+        // compare the solutions as sets of edges, independently of their order
+        var hash = 0L;
+        for (var solutions = search.search(product); solutions.hasNext();) {
+            hash += new HashSet<>(solutions.next()).hashCode();
+        }
+        var expandedCount = 0L;
+        for (var collapsed = search.searchCollapsed(product); collapsed.hasNext();) {
+            var next = collapsed.next();
+            assertTrue(next.getRepresentative().validate(product));
+            for (var solutions = next.expand(); solutions.hasNext();) {
+                hash -= new HashSet<>(solutions.next()).hashCode();
+                expandedCount++;
+            }
+        }
+        assertEquals(count.getSolutionCount(), expandedCount);
+        assertEquals(0, hash);
+    }
+
+    @Test
+    public void testOrderingKevinLarge2() {
+        var g = readKevinLarge2();
+        var search = new MySearch(g);
+        var product = KL2_PRODUCT;
+        var count = search.count(product);
+        var learning = EdgeOrdering.bySuccessRate();
+        for (var ordering : List.of(EdgeOrdering.BY_DEPTH, EdgeOrdering.BY_PRE_SIZE, learning, learning)) {
+            var options = SearchOptions.NONE.withOrdering(ordering);
+            var ordered = search.count(product, options);
+            assertEquals(count.getSolutionCount(), ordered.getSolutionCount());
+            assertEquals(count.getSizeHistogram(), ordered.getSizeHistogram());
+            var first = search.search(product, options).next();
+            assertTrue(first.validate(product));
+        }
+        var edge = search.search(product).next().get(0);
+        assertTrue(learning.getSuccessRate(edge) > 0);
+    }
+
+    @Test
+    public void testSink() throws IOException {
+        var g = graph("names", "P;p\"1;A;B", "P;p\\2;B", "A;\u00e9;G", "B;b;G");
+        g.addGenerator("G");
+        var search = new MySearch(g);
+        var binary = Files.createTempFile("solutions", ".bin");
+        var json = Files.createTempFile("solutions", ".ndjson");
+        try {
+            try (var binarySink = SolutionSink.open(binary, SolutionSink.Format.BINARY);
+                    var jsonSink = SolutionSink.open(json, SolutionSink.Format.NDJSON)) {
+                search.forEachSolution(new Node("P"), binarySink.andThen(jsonSink));
+                search.forEachSolution(new Node("A"), binarySink);
+                assertEquals(3, binarySink.getSolutionCount());
+            }
+            var read = new ArrayList<String>();
+            SolutionSink.readBinary(binary, (product, edges) -> read.add(product.name() + edges));
+            assertEquals(List.of("P[p\\2, b, GEN-G]", "P[p\"1, b, GEN-G, \u00e9]", "A[\u00e9, GEN-G]"), read);
+            assertEquals(List.of(
+                    "{\"product\":\"P\",\"size\":3,\"steps\":3,\"edges\":[\"p\\\\2\",\"b\",\"GEN-G\"]}",
+                    "{\"product\":\"P\",\"size\":4,\"steps\":9,\"edges\":[\"p\\\"1\",\"b\",\"GEN-G\",\"\\u00e9\"]}"),
+                    Files.readAllLines(json));
+        } finally {
+            Files.delete(binary);
+            Files.delete(json);
+        }
+    }
+
+    @Test
+    public void testSinkConcurrent() throws Exception {
+        var solutions = new ArrayList<Solution>();
+        new MySearch(conflictGraph()).search("P").forEachRemaining(solutions::add);
+        var file = Files.createTempFile("solutions", ".bin");
+        var pool = Executors.newFixedThreadPool(4);
+        try {
+            try (var sink = SolutionSink.open(file, SolutionSink.Format.BINARY)) {
+                var tasks = new ArrayList<Callable<Void>>();
+                for (var t = 0; t < 4; t++) {
+                    tasks.add(() -> {
+                        for (var i = 0; i < 20_000; i++) {
+                            sink.accept(solutions.get(i % 2));
+                        }
+                        return null;
+                    });
+                }
+                for (var future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            }
+            var counts = new HashMap<List<String>, Integer>();
+            SolutionSink.readBinary(file, (product, edges) -> counts.merge(edges, 1, Integer::sum));
+            assertEquals(Map.of(CONFLICT_SOLUTIONS.get(0), 40_000, CONFLICT_SOLUTIONS.get(1), 40_000), counts);
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testSinkFailure() {
+        var solution = new MySearch(conflictGraph()).search("P").next();
+        var sink = new SolutionSink(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                throw new IllegalStateException("Disk on fire");
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                // nothing to close
+            }
+        }, SolutionSink.Format.NDJSON);
+        try {
+            while (true) {
+                sink.accept(solution);
+            }
+        } catch (UncheckedIOException exc) {
+            assertEquals("Disk on fire", exc.getCause().getCause().getMessage());
+        }
+        try {
+            sink.close();
+            fail();
+        } catch (IOException exc) {
+            assertTrue(exc.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testDot() throws IOException {
+        var g = graph("names", "P;p\"1;A;B", "P;p\\2;B", "A;\u00e9;G", "B;b;G");
+        g.addGenerator("G");
+        var search = new MySearch(g);
+        var product = new Node("P");
+        var file = Files.createTempFile("solutions", ".dot");
+        try {
+            try (var exporter = DotExporter.open(file)) {
+                search.forEachSolution(product, exporter);
+                assertEquals(2, exporter.getGraphCount());
+            }
+            var dot = Files.readString(file);
+            var first = search.search(product).next();
+            assertTrue(dot.startsWith(DotExporter.toDot("P-0", first)));
+            assertEquals(first.toDot().replace(first.getName(), "P-0"), DotExporter.toDot("P-0", first));
+            assertEquals("""
+                    digraph "P-0" {
+                    node [style=filled,color=gold3,fillcolor=gold1,shape=box]
+                    edge [color=gold3]
+                    "B" [color=deepskyblue3,fillcolor=deepskyblue1,shape=ellipse]
+                    "P" [color=deepskyblue3,fillcolor=deepskyblue1,shape=ellipse]
+                    "G" [color=deepskyblue3,fillcolor=deepskyblue1,shape=ellipse]
+                    "p\\\\2" [height=0,width=0]
+                    "B" -> "p\\\\2" [headlabel="0"]
+                    "p\\\\2" -> "P"
+                    "b" [height=0,width=0]
+                    "G" -> "b" [headlabel="0"]
+                    "b" -> "B"
+                    "GEN-G" [height=0,width=0]
+                    "GEN-G" -> "G"
+                    }
+                    """, DotExporter.toDot("P-0", first));
+            assertTrue(dot.contains("\n\"p\\\"1\" [height=0,width=0]\n"));
+            assertTrue(dot.contains("\n\"\u00e9\" -> \"A\"\n"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testDotSampling() throws Exception {
+        var indices = List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        assertEquals(List.of(0L, 1L, 2L), indices.stream().filter(DotExporter.Sampling.first(3)::test).toList());
+        assertEquals(List.of(0L, 4L, 8L), indices.stream().filter(DotExporter.Sampling.every(4)::test).toList());
+        var random = DotExporter.Sampling.random(0.25, 42);
+        var sampled = 0;
+        for (var i = 0L; i < 10_000; i++) {
+            assertEquals(random.test(i), DotExporter.Sampling.random(0.25, 42).test(i));
+            if (random.test(i)) {
+                sampled++;
+            }
+        }
+        assertTrue(Math.abs(sampled - 2500) < 200);
+        // concurrent exports through one sampling exporter
+        var solution = new MySearch(conflictGraph()).search("P").next();
+        var file = Files.createTempFile("solutions", ".dot");
+        var pool = Executors.newFixedThreadPool(4);
+        try {
+            try (var exporter = DotExporter.open(file, DotExporter.Sampling.every(4))) {
+                var tasks = new ArrayList<Callable<Void>>();
+                for (var t = 0; t < 4; t++) {
+                    tasks.add(() -> {
+                        for (var i = 0; i < 1000; i++) {
+                            exporter.accept(solution);
+                        }
+                        return null;
+                    });
+                }
+                for (var future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+                assertEquals(4000, exporter.getSolutionCount());
+                assertEquals(1000, exporter.getGraphCount());
+            }
+            // every graph is written as a whole
+            var graphs = Files.readString(file).split("(?<=\n}\n)");
+            assertEquals(1000, graphs.length);
+            var names = new HashSet<String>();
+            for (var graph : graphs) {
+                var name = graph.substring("digraph \"".length(), graph.indexOf("\" {"));
+                assertEquals(DotExporter.toDot(name, solution), graph);
+                names.add(name);
+            }
+            assertEquals(1000, names.size());
+            assertTrue(names.contains("P-3996"));
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testBestFirstKevinLarge2() {
+        var g = readKevinLarge2();
+        var product = KL2_PRODUCT;
+        var solutions = new BestFirstSearch(g).search(product);
+        var first = solutions.next();
+        assertEquals(13, first.size());
+        assertTrue(first.validate(product));
+        var size = first.size();
+        for (var i = 0; i < 100; i++) {
+            var next = solutions.next();
+            assertTrue(next.size() >= size);
+            size = next.size();
+        }
+    }
+
+    @Test
+    public void testBoundedKevinLarge2() {
+        var g = readKevinLarge2();
+        var product = KL2_PRODUCT;
+        var search = new MySearch(g);
+        var count = 0;
+        for (var solutions = search.searchWithin(product, 18); solutions.hasNext();) {
+            assertTrue(solutions.next().size() <= 18);
+            count++;
+        }
+        // sizes 13 to 18 occur 8, 26, 76, 142, 280 and 390 times
+        assertEquals(922, count);
+        var top = new BestFirstSearch(search).search(product, 34);
+        for (var i = 0; i < 34; i++) {
+            assertEquals(i < 8 ? 13 : 14, top.next().size());
+        }
+        assertFalse(top.hasNext());
+    }
+
+    @Test
+    public void testBoundedOverflow() {
+        var g = graph("overflow", "P;p;A;B;C", "A;a;G", "B;b;G", "C;c;G");
+        g.addGenerator("G");
+        var search = new MySearch(g);
+        var product = new Node("P");
+        // the cost of the only solution is 3 * 2^30, which does not fit in an int
+        ToIntFunction<Edge> weight = e -> e.source().size() == 1 ? 1 << 30 : 0;
+        assertFalse(search.searchWithin(product, 100, weight).hasNext());
+        assertFalse(search.searchWithin(product, Integer.MAX_VALUE - 1, weight).hasNext());
+        var best = new BestFirstSearch(search, weight);
+        assertEquals(Integer.MAX_VALUE, best.getCost(best.search(product).next()));
+    }
+
+    @Test
+    public void testAttachKevinLarge2() {
+        var g = readGraph("kevinLarge2");
+        g.addGenerator("LemWqhRXIa");
+        var product = KL2_PRODUCT;
+        var search = new MySearch(g);
+        search.attach();
+        assertEquals(0, search.count(product).getSolutionCount());
+        g.addGenerator("nurXcDYLrM");
+        assertEquals(KL2_SOLUTION_COUNT, search.count(product).getSolutionCount());
+        var facade = search.getCompactGraph().getFacade();
+        var fresh = new MySearch(g).getCompactGraph().getFacade();
+        assertEquals(fresh.getNodePreMap(), facade.getNodePreMap());
+        assertEquals(fresh.getNodeDepthMap(), facade.getNodeDepthMap());
+        g.removeEdge(new Edge(List.of(), "GEN-nurXcDYLrM", new Node("nurXcDYLrM")));
+        assertEquals(0, search.count(product).getSolutionCount());
+        search.detach();
+    }
+
+    @Test
+    public void testRemoveRegion() {
+        var g = graph("region", "P;p;A", "P;q;D", "A;a1;B", "A;a2;C", "C;c;A", "B;b;H", "D;d;G", "E;e;A;D");
+        g.addGenerator("G");
+        g.addGenerator("H");
+        var search = new MySearch(g);
+        search.attach();
+        // without H, the cycle of A and C is no longer derivable, but P still is through D
+        g.removeEdge(new Edge(List.of(), "GEN-H", new Node("H")));
+        var fresh = new MySearch(g);
+        var names = search.getGraph().getNodes().stream().map(Node::name).collect(Collectors.toSet());
+        assertEquals(Set.of("P", "D", "G"), names);
+        assertEquals(fresh.getGraph().getNodes(), search.getGraph().getNodes());
+        assertEquals(fresh.getGraph().getEdges(), search.getGraph().getEdges());
+        assertEquals(fresh.getCompactGraph().getFacade().getNodePreMap(),
+                search.getCompactGraph().getFacade().getNodePreMap());
+        assertEquals(List.of(List.of("q", "d", "GEN-G")), edgeNames(search.search(new Node("P"))));
+        search.detach();
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        var g = readGraph("kevinLarge");
+        g.addGenerator("wqiaiyuUwj");
+        var search = new MySearch(g);
+        var file = Files.createTempFile("kevinLarge", ".snap");
+        try {
+            search.save(file);
+            var loaded = MySearch.load(file);
+            assertEquals(search.getGraph().getNodes(), loaded.getGraph().getNodes());
+            assertEquals(search.getGraph().getEdges(), loaded.getGraph().getEdges());
+            var sol = search.search("RTyLrWLwQv").next();
+            var it = loaded.search("RTyLrWLwQv");
+            assertEquals(sol, it.next());
+            assertFalse(it.hasNext());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws IOException {
+        var file = Files.createTempFile("conflict", ".snap");
+        try {
+            new MySearch(conflictGraph()).save(file);
+            var bytes = Files.readAllBytes(file);
+            for (var length = 0; length < bytes.length; length++) {
+                Files.write(file, Arrays.copyOf(bytes, length));
+                assertLoadFails(file);
+            }
+            // a node count far beyond the size of the file
+            var corrupt = bytes.clone();
+            var nameLength = ByteBuffer.wrap(corrupt, 8, 4).getInt();
+            ByteBuffer.wrap(corrupt, 12 + nameLength, 4).putInt(Integer.MAX_VALUE);
+            Files.write(file, corrupt);
+            assertLoadFails(file);
+            // an edge target beyond the number of nodes
+            corrupt = bytes.clone();
+            var buffer = ByteBuffer.wrap(corrupt);
+            buffer.position(12 + nameLength);
+            // skip the node names, the edge count and the name of the first edge
+            for (var i = buffer.getInt(); i > 0; i--) {
+                var length = buffer.getInt();
+                buffer.position(buffer.position() + length);
+            }
+            buffer.getInt();
+            var length = buffer.getInt();
+            buffer.position(buffer.position() + length);
+            buffer.putInt(Integer.MAX_VALUE);
+            Files.write(file, corrupt);
+            assertLoadFails(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Checks that loading a snapshot fails with an exception naming the file. */
+    private static void assertLoadFails(Path file) {
+        try {
+            MySearch.load(file);
+            fail();
+        } catch (IOException exc) {
+            assertTrue(exc.getMessage().contains(file.toString()));
+        }
+    }
+
     @Test
     public void testExtratest() {
         var g = readGraph("extratest");
@@ -66,6 +886,50 @@ public class MySearchTest {
         }
     }
 
+    /** Reads kevinLarge2, with the generators from which {@link #KL2_PRODUCT} can be made. */
+    private Graph readKevinLarge2() {
+        var result = readGraph("kevinLarge2");
+        result.addGenerator("LemWqhRXIa");
+        result.addGenerator("nurXcDYLrM");
+        return result;
+    }
+
+    /**
+     * Builds a graph from edges given as in a graph file: the target, the edge
+     * name and the sources, separated by semicolons.
+     */
+    private static Graph graph(String name, String... edges) {
+        var result = new Graph(name);
+        for (var edge : edges) {
+            var parts = List.of(edge.split(";"));
+            var sources = parts.subList(2, parts.size());
+            result.addNode(parts.get(0));
+            sources.forEach(result::addNode);
+            result.addEdge(sources, parts.get(1), parts.get(0));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a graph in which making A by a1 or a3 finds C, which then has no
+     * feasible maker as its only in-edge needs A; the makers chosen for X1 and
+     * X2 in between are irrelevant. The solutions for P are
+     * {@link #CONFLICT_SOLUTIONS}.
+     */
+    private static Graph conflictGraph() {
+        var result = graph("conflict", "P;p;A", "P;q;G", "A;a1;C;X1;X2", "A;a2;G", "A;a3;C;X2;X1", "C;c;A",
+                "X1;x1a;G", "X1;x1b;G", "X1;x1c;G", "X2;x2a;G", "X2;x2b;G", "X2;x2c;G");
+        result.addGenerator("G");
+        return result;
+    }
+
+    /** Returns the edge names of the remaining solutions of an iterator. */
+    private static List<List<String>> edgeNames(Iterator<Solution> solutions) {
+        var result = new ArrayList<List<String>>();
+        solutions.forEachRemaining(s -> result.add(s.stream().map(Edge::name).toList()));
+        return result;
+    }
+
     private Graph readGraph(String filename) {
         try {
             return new CSVGraphReader(GRAPH_HOME + FILE_SEP + filename + ".csv").run();
@@ -0,0 +1,142 @@
+package nl.utwente.fmt.pathsearch;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opencsv.exceptions.CsvException;
+
+/**
+ * JMH benchmarks for the search itself, over a fixed set of targets in the
+ * graphs of {@code graphs-0-14}. See the README for how to run them.
+ * @author Arend Rensink
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    /** Fixed search targets, each with the generators added to its graph. */
+    public enum Target {
+        HELLOWORLD("helloworld", "domain.Savings.SavingsMeResponse", "domain.CustomerInformation.CustomerId"),
+        KEVIN_LARGE("kevinLarge", "RTyLrWLwQv", "wqiaiyuUwj"),
+        KEVIN_LARGE2("kevinLarge2", "wZNHUjQJZm", "LemWqhRXIa", "nurXcDYLrM"),
+        LARGE_0("large_0", "15_v-t-35"),
+        LARGE_3_112("large_3", "8_v-t-112"),
+        LARGE_3_371("large_3", "8_v-t-371"),
+        LARGE_3_432("large_3", "8_v-t-432");
+
+        Target(String graph, String product, String... generators) {
+            this.graph = graph;
+            this.product = new Node(product);
+            this.generators = generators;
+        }
+
+        /**
+         * Reads the graph and adds the generators; if there are none, adds the
+         * givens of {@link SearchGraph} instead.
+         */
+        Graph readGraph() throws IOException, CsvException {
+            var result = new CSVGraphReader(GraphBenchmark.GRAPH_HOME + GraphBenchmark.FILE_SEP + this.graph + ".csv").run();
+            if (this.generators.length == 0) {
+                SearchGraph.enhance(result);
+            } else {
+                for (var generator : this.generators) {
+                    result.addGenerator(generator);
+                }
+            }
+            return result;
+        }
+
+        private final String graph;
+        private final Node product;
+        private final String[] generators;
+    }
+
+    @Param
+    public Target target;
+
+    private MySearch search;
+    /** Search instance that is kept running across invocations. */
+    private Iterator<Solution> solutions;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, CsvException {
+        MySearch.LOG = false;
+        this.search = new MySearch(this.target.readGraph());
+    }
+
+    /**
+     * Time until the first solution is found, including the set-up of the search
+     * instance, for every in-edge ordering.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Solution firstSolution(Ordered ordered) {
+        return this.search.search(this.target.product, ordered.options).next();
+    }
+
+    /** The in-edge orderings compared by {@link SearchBenchmark#firstSolution(Ordered)}. */
+    public enum Ordering {
+        DEFAULT, BY_DEPTH, BY_PRE_SIZE, BY_SUCCESS_RATE;
+    }
+
+    /** Number of steps of the search from which the success rates are learned. */
+    private static final long TRAINING_STEPS = 100_000;
+
+    /**
+     * The in-edge ordering of a benchmark. The success rates are learned from a
+     * search for the same target, limited to {@link #TRAINING_STEPS} steps.
+     */
+    @State(Scope.Benchmark)
+    public static class Ordered {
+        @Param
+        public Ordering ordering;
+
+        private SearchOptions options;
+
+        @Setup(Level.Trial)
+        public void setUp(SearchBenchmark benchmark) {
+            var edgeOrdering = switch (this.ordering) {
+            case DEFAULT -> EdgeOrdering.DEFAULT;
+            case BY_DEPTH -> EdgeOrdering.BY_DEPTH;
+            case BY_PRE_SIZE -> EdgeOrdering.BY_PRE_SIZE;
+            case BY_SUCCESS_RATE -> {
+                var result = EdgeOrdering.bySuccessRate();
+                var training = benchmark.search.search(benchmark.target.product,
+                        SearchOptions.NONE.withOrdering(result).withMaxSteps(TRAINING_STEPS));
+                while (training.hasNext()) {
+                    training.nextView();
+                }
+                yield result;
+            }
+            };
+            this.options = SearchOptions.NONE.withOrdering(edgeOrdering);
+        }
+    }
+
+    /** Number of solutions per second, enumerating the solutions of the target repeatedly. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Solution solutions() {
+        if (this.solutions == null || !this.solutions.hasNext()) {
+            this.solutions = this.search.search(this.target.product);
+        }
+        return this.solutions.next();
+    }
+}
@@ -63,7 +63,7 @@ public class SearchGraph {
     }
 
     /** Adds a number of "givens" to the graph */
-    private static Graph enhance(Graph g) {
+    static Graph enhance(Graph g) {
         var nodeIter = g.getNodes().iterator();
         for (var i = 0; i < GIVEN_COUNT && nodeIter.hasNext(); i++) {
             var n = nodeIter.next();
@@ -95,7 +95,7 @@ public class SearchGraph {
         var solIter = searcher.search(target);
         System.out.printf("Solutions for %s in %s%n", target, searcher.getGraph().getName());
         var count = 0;
-        var stepCount = 0;
+        var stepCount = 0L;
         while (solIter.hasNext()) {
             count++;
             var sol = solIter.next();